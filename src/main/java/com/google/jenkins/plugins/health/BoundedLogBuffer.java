@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Charsets;
+
+/**
+ * An {@link OutputStream} capturing at most a fixed number of bytes of what
+ * is written to it: the first half of the limit as written, and the second
+ * half as a ring buffer over the latest bytes.  Whatever falls in between is
+ * dropped, and replaced with a marker saying how much was.
+ *
+ * Buffers grow with what is actually written, so a quiet writer costs little
+ * regardless of the limit.
+ */
+final class BoundedLogBuffer extends OutputStream {
+  private static final int INITIAL_SIZE = 256;
+
+  private int headLimit;
+  private int tailLimit;
+
+  private byte[] head = new byte[0];
+  private int headLength;
+
+  /** Allocated once the head is full, then written to in circles. */
+  private byte[] tail;
+  /** Where the next byte of the tail goes. */
+  private int tailPosition;
+  /** How many bytes were ever written to the tail. */
+  private long tailWritten;
+
+  /**
+   * @param limit the number of bytes to keep at most, zero to keep all.
+   */
+  BoundedLogBuffer(int limit) {
+    reset(limit);
+  }
+
+  /**
+   * Forget everything written so far, and start over with a new limit.  The
+   * buffers are kept for reuse, unless the new limit is smaller.
+   *
+   * @param limit the number of bytes to keep at most, zero to keep all.
+   */
+  synchronized void reset(int limit) {
+    checkArgument(limit >= 0);
+    if (limit == 0) {
+      this.headLimit = Integer.MAX_VALUE - 8;
+      this.tailLimit = 0;
+    } else {
+      this.headLimit = (limit + 1) / 2;
+      this.tailLimit = limit / 2;
+    }
+    if (head.length > headLimit) {
+      head = new byte[0];
+    }
+    if (tail != null && tail.length != tailLimit) {
+      tail = null;
+    }
+    headLength = 0;
+    tailPosition = 0;
+    tailWritten = 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void write(int b) {
+    if (headLength < headLimit) {
+      ensureHead(headLength + 1);
+      head[headLength++] = (byte) b;
+    } else if (tailLimit > 0) {
+      ensureTail();
+      tail[tailPosition] = (byte) b;
+      tailPosition = (tailPosition + 1) % tailLimit;
+      tailWritten++;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void write(byte[] bytes, int offset, int length) {
+    int toHead = Math.min(length, headLimit - headLength);
+    if (toHead > 0) {
+      ensureHead(headLength + toHead);
+      System.arraycopy(bytes, offset, head, headLength, toHead);
+      headLength += toHead;
+      offset += toHead;
+      length -= toHead;
+    }
+    if (length == 0 || tailLimit == 0) {
+      return;
+    }
+    ensureTail();
+    tailWritten += length;
+    if (length >= tailLimit) {
+      // Only the last bytes survive anyway.
+      System.arraycopy(bytes, offset + length - tailLimit,
+          tail, 0, tailLimit);
+      tailPosition = 0;
+      return;
+    }
+    int first = Math.min(length, tailLimit - tailPosition);
+    System.arraycopy(bytes, offset, tail, tailPosition, first);
+    System.arraycopy(bytes, offset + first, tail, 0, length - first);
+    tailPosition = (tailPosition + length) % tailLimit;
+  }
+
+  private void ensureHead(int capacity) {
+    if (capacity > head.length) {
+      int size = Math.max(head.length * 2, INITIAL_SIZE);
+      head = Arrays.copyOf(head,
+          Math.min(headLimit, Math.max(size, capacity)));
+    }
+  }
+
+  private void ensureTail() {
+    if (tail == null) {
+      tail = new byte[tailLimit];
+    }
+  }
+
+  /**
+   * @return the number of bytes of the buffers held for reuse.
+   */
+  synchronized int getRetainedSize() {
+    return head.length + (tail == null ? 0 : tail.length);
+  }
+
+  /**
+   * @return the number of bytes written but not kept.
+   */
+  synchronized long getDropped() {
+    return Math.max(0, tailWritten - tailLimit);
+  }
+
+  /**
+   * @return whether nothing was written at all.
+   */
+  synchronized boolean isEmpty() {
+    return headLength == 0;
+  }
+
+  /**
+   * Decode what was kept, straight from the buffers.  In UTF-8, where the
+   * log is cut, the bytes of a character cut in two are dropped along with
+   * the rest, so that no garbled character is left on either side.
+   */
+  synchronized String toString(Charset charset) {
+    if (tailWritten == 0) {
+      return new String(head, 0, headLength, charset);
+    }
+    long dropped = getDropped();
+    if (dropped == 0) {
+      // The tail did not wrap around, and follows the head directly.
+      byte[] whole = Arrays.copyOf(head, headLength + (int) tailWritten);
+      System.arraycopy(tail, 0, whole, headLength, (int) tailWritten);
+      return new String(whole, charset);
+    }
+    // Decode the tail in one piece, so no character is split in two.
+    byte[] ordered = new byte[tailLimit];
+    System.arraycopy(tail, tailPosition, ordered, 0,
+        tailLimit - tailPosition);
+    System.arraycopy(tail, 0, ordered, tailLimit - tailPosition,
+        tailPosition);
+    int headKept = headLength;
+    int tailSkipped = 0;
+    if (Charsets.UTF_8.equals(charset)) {
+      headKept = completeLength(head, headLength);
+      tailSkipped = leadingContinuations(ordered);
+    }
+    return new StringBuilder()
+        .append(new String(head, 0, headKept, charset))
+        .append(Messages.HealthCheck_LogTruncated(
+            dropped + headLength - headKept + tailSkipped))
+        .append(new String(ordered, tailSkipped, tailLimit - tailSkipped,
+            charset))
+        .toString();
+  }
+
+  /**
+   * @return the given length of UTF-8, short of a character at its end that
+   * is missing some of its bytes.
+   */
+  private static int completeLength(byte[] bytes, int length) {
+    int lead = length - 1;
+    while (lead >= 0 && length - lead <= 3 && isContinuation(bytes[lead])) {
+      lead--;
+    }
+    if (lead < 0) {
+      return length;
+    }
+    int first = bytes[lead] & 0xff;
+    int expected =
+        first >= 0xf0 ? 4 : first >= 0xe0 ? 3 : first >= 0xc0 ? 2 : 1;
+    return length - lead < expected ? lead : length;
+  }
+
+  /**
+   * @return the number of UTF-8 continuation bytes at the start of the given
+   * bytes, which are what is left of a character whose start was dropped.
+   */
+  private static int leadingContinuations(byte[] bytes) {
+    int count = 0;
+    while (count < bytes.length && count < 3 && isContinuation(bytes[count])) {
+      count++;
+    }
+    return count;
+  }
+
+  private static boolean isContinuation(byte b) {
+    return (b & 0xc0) == 0x80;
+  }
+}
@@ -15,6 +15,13 @@
  */
 package com.google.jenkins.plugins.health;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import static com.google.common.base.CharMatcher.WHITESPACE;
@@ -26,9 +33,14 @@ import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
 
 import hudson.Extension;
+import hudson.ExtensionListListener;
 import hudson.PluginWrapper;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 import hudson.model.Descriptor;
 import hudson.model.Result;
 import hudson.model.TaskListener;
@@ -50,6 +62,11 @@ public class ClassLoaderCheck extends HealthCheck {
     return this.classesToCheck;
   }
 
+  /**
+   * {@link #classesToCheck}, parsed once rather than on every check.
+   */
+  private transient List<ClassSpec> specs;
+
   /**
    * @param classesToCheckCsv
    *          the classes to check as string of comma or space separated.
@@ -58,6 +75,23 @@ public class ClassLoaderCheck extends HealthCheck {
   public ClassLoaderCheck(String classesToCheckCsv) {
     this.classesToCheck = ImmutableList.copyOf(SPLITTER.split(
         checkNotNull(classesToCheckCsv)));
+    this.specs = compile(classesToCheck);
+  }
+
+  /**
+   * Parse the transient state back after being loaded from disk.
+   */
+  private Object readResolve() {
+    this.specs = compile(classesToCheck);
+    return this;
+  }
+
+  private static List<ClassSpec> compile(Iterable<String> classesToCheck) {
+    ImmutableList.Builder<ClassSpec> specs = ImmutableList.builder();
+    for (String classToCheck : classesToCheck) {
+      specs.add(new ClassSpec(classToCheck));
+    }
+    return specs.build();
   }
 
   /**
@@ -71,31 +105,132 @@ public class ClassLoaderCheck extends HealthCheck {
   @Override
   public Result perform(TaskListener taskListener) {
     boolean failed = false;
-    for (String classToCheck : getClassesToCheck()) {
-      try {
-        String[] parts = classToCheck.split("@", 2);
-        if (parts.length < 2) { // plugin name not provided
-          Class.forName(classToCheck);
-        } else { // plugin name is provided
-          String className = parts[0];
-          String pluginName = parts[1];
-          PluginWrapper plugin = Jenkins.getActiveInstance()
-              .getPluginManager().getPlugin(pluginName);
-          if (plugin == null) {
-            failed = true;
-            taskListener.error("Plugin not found: %s.\n", pluginName);
-          } else {
-            Class.forName(className, false, plugin.classLoader);
-          }
+    for (ClassSpec spec : specs) {
+      ClassLoader classLoader;
+      if (spec.pluginName == null) { // plugin name not provided
+        classLoader = ClassLoaderCheck.class.getClassLoader();
+      } else { // plugin name is provided
+        PluginWrapper plugin = Resolutions.getPlugin(spec.pluginName);
+        if (plugin == null) {
+          failed = true;
+          taskListener.error("Plugin not found: %s.\n", spec.pluginName);
+          continue;
         }
-      } catch (ClassNotFoundException cnne) {
+        classLoader = plugin.classLoader;
+      }
+      if (!Resolutions.isLoadable(spec.className, classLoader)) {
         failed = true;
-        taskListener.error("Class not found: %s.\n", classToCheck);
+        taskListener.error("Class not found: %s.\n", spec.classToCheck);
       }
     }
     return failed ? Result.FAILURE : Result.SUCCESS;
   }
 
+  /**
+   * A 'class' or 'class@plugin_name' entry, split into its parts.
+   */
+  private static final class ClassSpec {
+    private final String classToCheck;
+    private final String className;
+    @Nullable private final String pluginName;
+
+    ClassSpec(String classToCheck) {
+      this.classToCheck = classToCheck;
+      int at = classToCheck.indexOf('@');
+      if (at < 0) {
+        this.className = classToCheck;
+        this.pluginName = null;
+      } else {
+        this.className = classToCheck.substring(0, at);
+        this.pluginName = classToCheck.substring(at + 1);
+      }
+    }
+  }
+
+  /**
+   * Remembers which classes were found by which class loader, and which
+   * plugins were found by name.  Only successes are remembered: a class
+   * loader that found a class keeps finding it, and a plugin once loaded
+   * stays loaded until Jenkins restarts.  Both are still forgotten whenever
+   * plugins are dynamically loaded, so that no stale plugin is held on to.
+   */
+  @VisibleForTesting
+  static final class Resolutions {
+    private static final ConcurrentMap<ClassLoader, Set<String>> LOADABLE =
+        new MapMaker().weakKeys().makeMap();
+    private static final ConcurrentMap<String, PluginWrapper> PLUGINS =
+        new MapMaker().makeMap();
+
+    private Resolutions() {
+    }
+
+    /**
+     * @return whether the class can be loaded through the class loader,
+     * without initializing it.
+     */
+    static boolean isLoadable(String className, ClassLoader classLoader) {
+      Set<String> loadable = LOADABLE.get(classLoader);
+      if (loadable == null) {
+        loadable = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        Set<String> raced = LOADABLE.putIfAbsent(classLoader, loadable);
+        if (raced != null) {
+          loadable = raced;
+        }
+      }
+      if (loadable.contains(className)) {
+        return true;
+      }
+      try {
+        Class.forName(className, false, classLoader);
+      } catch (ClassNotFoundException e) {
+        return false;
+      }
+      loadable.add(className);
+      return true;
+    }
+
+    /**
+     * @return the plugin of the given name, null if it is not loaded.
+     */
+    @Nullable static PluginWrapper getPlugin(String pluginName) {
+      PluginWrapper plugin = PLUGINS.get(pluginName);
+      if (plugin == null) {
+        plugin = Jenkins.getActiveInstance()
+            .getPluginManager().getPlugin(pluginName);
+        if (plugin != null) {
+          PLUGINS.put(pluginName, plugin);
+        }
+      }
+      return plugin;
+    }
+
+    @VisibleForTesting
+    static boolean isCached(String className, ClassLoader classLoader) {
+      Set<String> loadable = LOADABLE.get(classLoader);
+      return loadable != null && loadable.contains(className);
+    }
+
+    static void invalidate() {
+      LOADABLE.clear();
+      PLUGINS.clear();
+    }
+  }
+
+  /**
+   * Forget what was resolved whenever a plugin is dynamically loaded, which
+   * refreshes the extension lists.
+   */
+  @Initializer(after = InitMilestone.PLUGINS_STARTED)
+  public static void invalidateOnPluginLoad() {
+    Jenkins.getActiveInstance().getExtensionList(Descriptor.class)
+        .addListener(new ExtensionListListener() {
+          @Override
+          public void onChange() {
+            Resolutions.invalidate();
+          }
+        });
+  }
+
   /**
    * Descriptor class for this extension.
    */
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2013 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.labels.LabelAtom;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps a running count of the online executors matching each set of labels
+ * that an {@link ExecutorCheck} asked about, so that evaluating the check
+ * does not have to walk every node and its {@link Computer}.
+ *
+ * The counts are updated one node at a time: as nodes come online or go
+ * offline, as their configuration is saved, which is how nodes being added
+ * or relabelled show, and as they are removed.  When Jenkins reports a
+ * configuration change, only the nodes that appeared or disappeared since
+ * are looked at, so that agents coming and going do not cost a recount.
+ * The counts are only built from scratch when the index is first used.
+ *
+ * Nodes are also aggregated by their distinct sets of labels, of which there
+ * are usually far fewer than nodes.  Counting for a new label set, or
+ * recounting them all, is then a matter of going through those aggregates
+ * rather than through every node once per label set.
+ */
+@Extension
+public class ExecutorCapacityIndex extends ComputerListener {
+  /**
+   * The online executor count of each label set asked about so far, keyed by
+   * that set.  The empty set matches every node, including the master.
+   */
+  private final ConcurrentMap<Set<Label>, AtomicInteger> tallies =
+      Maps.newConcurrentMap();
+
+  /**
+   * What each node currently contributes to the tallies, keyed by node name.
+   * Null until the index is first used.  Guarded by {@code this}.
+   */
+  @Nullable private Map<String, NodeState> nodes;
+
+  /**
+   * The online executors of the nodes carrying each distinct set of labels,
+   * maintained along with {@link #nodes}.  Guarded by {@code this}.
+   */
+  @Nullable private Map<Set<LabelAtom>, Integer> executorsByLabels;
+
+  /**
+   * How many nodes carry each distinct set of labels, maintained along with
+   * {@link #nodes}.  Guarded by {@code this}.
+   */
+  private final Multiset<Set<LabelAtom>> labelSets = HashMultiset.create();
+
+  /**
+   * Whether nodes with a given set of labels match each label set asked
+   * about, which may hold label expressions that are not free to evaluate.
+   * As it is keyed by the labels themselves, a node whose labels change is
+   * looked up afresh.  Label sets no node carries anymore are dropped, so
+   * that it only holds those of current nodes.  Guarded by {@code this}.
+   */
+  private final Map<Set<Label>, Map<Set<LabelAtom>, Boolean>> matchCache =
+      Maps.newHashMap();
+
+  /**
+   * @return the {@link ExecutorCapacityIndex} of this Jenkins instance.
+   */
+  public static ExecutorCapacityIndex get() {
+    return Iterables.getOnlyElement(Jenkins.getActiveInstance()
+        .getExtensionList(ExecutorCapacityIndex.class));
+  }
+
+  /**
+   * @param labels the labels of which a node needs at least one to count, or
+   * none to count every node.
+   * @return the number of executors on the online nodes matching the labels.
+   */
+  public int getOnlineExecutors(Set<? extends Label> labels) {
+    Set<Label> key = ImmutableSet.<Label>copyOf(labels);
+    AtomicInteger tally = tallies.get(key);
+    if (tally == null) {
+      tally = register(key);
+    }
+    return tally.get();
+  }
+
+  /**
+   * Start keeping count for a new label set, counting its current executors
+   * with a scan of the nodes we already know about.
+   */
+  private synchronized AtomicInteger register(Set<Label> key) {
+    AtomicInteger tally = tallies.get(key);
+    if (tally == null) {
+      if (nodes == null) {
+        rebuild();
+      }
+      tally = new AtomicInteger(count(key));
+      tallies.put(key, tally);
+    }
+    return tally;
+  }
+
+  /**
+   * @return the online executors of the nodes matching the given labels.
+   */
+  private int count(Set<Label> key) {
+    int total = 0;
+    for (Map.Entry<Set<LabelAtom>, Integer> entry
+             : executorsByLabels.entrySet()) {
+      if (matchesCached(key, entry.getKey())) {
+        total += entry.getValue();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Recount all the tallies from the current nodes, in a single pass over
+   * them.
+   */
+  @VisibleForTesting
+  synchronized void rebuild() {
+    Jenkins jenkins = Jenkins.getActiveInstance();
+    nodes = Maps.newHashMap();
+    executorsByLabels = Maps.newHashMap();
+    labelSets.clear();
+    matchCache.clear();
+    rebuilds++;
+    for (Node node : jenkins.getNodes()) {
+      add(node.getNodeName(), new NodeState(node, isOnline(node)));
+    }
+    // Jenkins#getNodes() excludes the master
+    add(jenkins.getNodeName(), new NodeState(jenkins, isOnline(jenkins)));
+
+    for (Map.Entry<Set<Label>, AtomicInteger> entry : tallies.entrySet()) {
+      entry.getValue().set(count(entry.getKey()));
+    }
+  }
+
+  /**
+   * How many times the counts were built from scratch.  Guarded by
+   * {@code this}.
+   */
+  private int rebuilds;
+
+  @VisibleForTesting
+  synchronized int getRebuilds() {
+    return rebuilds;
+  }
+
+  private void add(String name, NodeState state) {
+    NodeState previous = nodes.put(name, state);
+    if (previous != null) {
+      aggregate(previous, -1);
+    }
+    aggregate(state, 1);
+  }
+
+  /**
+   * Add or remove what a node contributes to the aggregates.
+   */
+  private void aggregate(NodeState state, int sign) {
+    Integer current = executorsByLabels.get(state.labels);
+    int updated = (current == null ? 0 : current) + sign * state.executors;
+    if (updated == 0 && sign < 0) {
+      executorsByLabels.remove(state.labels);
+    } else {
+      executorsByLabels.put(state.labels, updated);
+    }
+    if (sign > 0) {
+      labelSets.add(state.labels);
+    } else if (labelSets.remove(state.labels, 1) == 1) {
+      // That was the last node with these labels.
+      for (Map<Set<LabelAtom>, Boolean> known : matchCache.values()) {
+        known.remove(state.labels);
+      }
+    }
+  }
+
+  /**
+   * Replace what a node contributes to the tallies.
+   *
+   * @param name the name of the node.
+   * @param state the new state of the node, null if it was removed.
+   */
+  private synchronized void update(String name, @Nullable NodeState state) {
+    if (nodes == null) {
+      return; // Not used yet, the first use will scan the nodes anyway.
+    }
+    NodeState previous =
+        (state == null) ? nodes.remove(name) : nodes.put(name, state);
+    for (Map.Entry<Set<Label>, AtomicInteger> entry : tallies.entrySet()) {
+      int delta = 0;
+      if (previous != null
+          && matchesCached(entry.getKey(), previous.labels)) {
+        delta -= previous.executors;
+      }
+      if (state != null && matchesCached(entry.getKey(), state.labels)) {
+        delta += state.executors;
+      }
+      if (delta != 0) {
+        entry.getValue().addAndGet(delta);
+      }
+    }
+    // Only now, as this may forget whether the previous labels matched.
+    if (previous != null) {
+      aggregate(previous, -1);
+    }
+    if (state != null) {
+      aggregate(state, 1);
+    }
+  }
+
+  /**
+   * Replace what the node of the given name contributes to the tallies with
+   * its current configuration, or drop it if there is no such node anymore.
+   */
+  private void update(String name) {
+    Jenkins jenkins = Jenkins.getActiveInstance();
+    Node node = jenkins.getNodeName().equals(name)
+        ? jenkins : jenkins.getNode(name);
+    if (node != null) {
+      update(node, isOnline(node));
+    } else {
+      update(name, null);
+    }
+  }
+
+  /**
+   * Count the nodes that are not known yet, and drop those that are gone,
+   * leaving the others as the events about them left them.
+   */
+  private synchronized void reconcile() {
+    if (nodes == null) {
+      return; // Not used yet, the first use will scan the nodes anyway.
+    }
+    Jenkins jenkins = Jenkins.getActiveInstance();
+    Set<String> current = Sets.newHashSet(jenkins.getNodeName());
+    for (Node node : jenkins.getNodes()) {
+      current.add(node.getNodeName());
+      if (!nodes.containsKey(node.getNodeName())) {
+        update(node, isOnline(node));
+      }
+    }
+    for (String name : ImmutableList.copyOf(nodes.keySet())) {
+      if (!current.contains(name)) {
+        update(name, null);
+      }
+    }
+  }
+
+  private void update(@Nullable Node node, boolean online) {
+    if (node != null) {
+      update(node.getNodeName(), new NodeState(node, online));
+    }
+  }
+
+  private static boolean isOnline(Node node) {
+    Computer computer = node.toComputer();
+    return computer != null && computer.isOnline();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onOnline(Computer computer, TaskListener listener) {
+    update(computer.getNode(), !computer.isTemporarilyOffline());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onOffline(Computer computer) {
+    Node node = computer.getNode();
+    if (node != null) {
+      update(node, false);
+    } else {
+      // The node was removed, which takes its computer offline.
+      update(computer.getName(), null);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onTemporarilyOnline(Computer computer) {
+    update(computer.getNode(), computer.isOnline());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onTemporarilyOffline(Computer computer, OfflineCause cause) {
+    update(computer.getNode(), false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onConfigurationChange() {
+    reconcile();
+  }
+
+  /**
+   * Keeps the index up to date as nodes are added or reconfigured, which
+   * saves their configuration, and as the master is, which saves that of
+   * Jenkins.
+   */
+  @Extension
+  public static class SaveableListenerImpl extends SaveableListener {
+    /** {@inheritDoc} */
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+      if (o instanceof Jenkins) {
+        get().update(((Jenkins) o).getNodeName());
+      } else {
+        String node = nodeOf(file.getFile());
+        if (node != null) {
+          get().update(node);
+        }
+      }
+    }
+
+    /**
+     * @return the name of the node whose configuration the file holds, as
+     * it is kept in a directory of that name under {@code nodes}, or null if
+     * it is not that of a node.
+     */
+    @Nullable
+    private static String nodeOf(File file) {
+      File nodeDir = file.getParentFile();
+      return nodeDir != null && new File(Jenkins.getActiveInstance()
+          .getRootDir(), "nodes").equals(nodeDir.getParentFile())
+          ? nodeDir.getName() : null;
+    }
+  }
+
+  /**
+   * The labels and online executors of a node, as of the last event about it.
+   */
+  private static final class NodeState {
+    private final Set<LabelAtom> labels;
+    private final int executors;
+
+    NodeState(Node node, boolean online) {
+      this.labels = ImmutableSet.copyOf(node.getAssignedLabels());
+      this.executors = online ? node.getNumExecutors() : 0;
+    }
+  }
+
+  /**
+   * {@link #matches}, remembered per label set of the nodes.
+   */
+  private boolean matchesCached(Set<Label> key, Set<LabelAtom> labels) {
+    Map<Set<LabelAtom>, Boolean> known = matchCache.get(key);
+    if (known == null) {
+      known = Maps.newHashMap();
+      matchCache.put(key, known);
+    }
+    Boolean matched = known.get(labels);
+    if (matched == null) {
+      matched = matches(key, labels);
+      known.put(labels, matched);
+    }
+    return matched;
+  }
+
+  /**
+   * @return whether a node with the given labels carries at least one of the
+   * labels of the key, or satisfies it if it is a label expression, or the
+   * key is empty.
+   */
+  private static boolean matches(Set<Label> key, Set<LabelAtom> labels) {
+    if (key.isEmpty()) {
+      return true;
+    }
+    for (Label label : key) {
+      if (label.matches(labels)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
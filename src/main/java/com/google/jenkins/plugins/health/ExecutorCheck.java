@@ -17,6 +17,8 @@ package com.google.jenkins.plugins.health;
 
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
@@ -26,39 +28,86 @@ import static com.google.common.base.CharMatcher.is;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 
 import hudson.Extension;
 import hudson.model.AutoCompletionCandidates;
-import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
-import hudson.model.Node;
 import hudson.model.Result;
 import hudson.model.TaskListener;
-import hudson.model.labels.LabelAtom;
+import hudson.util.FormValidation;
+
+import antlr.ANTLRException;
 
 import jenkins.model.Jenkins;
 
 /**
  * An extension of {@link HealthCheck} that verifies that Jenkins has more than
  * a given minimum number of executors of some given labels.
+ *
+ * The labels are either a space separated list, of which a node needs at
+ * least one, or a full label expression such as {@code linux && !gpu}.
  */
 public class ExecutorCheck extends HealthCheck {
   private static final CharMatcher SEP = WHITESPACE.or(is(','));
   private final int minExecutors;
   private final Set<? extends Label> labels;
 
+  /**
+   * The label expression to check, instead of {@link #labels}, or null if
+   * the labels are a plain list.
+   */
+  @Nullable private final String labelExpression;
+
   /**
    * @param minExecutors the required minimum number of executors.
-   * @param labelsSsv the labels to be checked, space separated.
+   * @param labelsSsv the labels to be checked, space separated, or a label
+   * expression.
+   * @throws IllegalArgumentException if the label expression is invalid.
    */
   @DataBoundConstructor
   public ExecutorCheck(int minExecutors, String labelsSsv) {
     this.minExecutors = minExecutors;
-    this.labels = ImmutableSet.copyOf(Label.parse(labelsSsv));
+    if (isExpression(labelsSsv)) {
+      this.labelExpression = labelsSsv.trim();
+      this.labels = ImmutableSet.of();
+      this.compiled = compile(labelExpression);
+    } else {
+      this.labelExpression = null;
+      this.labels = ImmutableSet.copyOf(Label.parse(labelsSsv));
+    }
+  }
+
+  /**
+   * @return whether the given labels use any of the operators of label
+   * expressions, rather than being a plain list.
+   */
+  static boolean isExpression(@Nullable String labels) {
+    if (labels == null) {
+      return false;
+    }
+    for (String operator : new String[] {"&&", "||", "!", "(", ")", "->"}) {
+      if (labels.contains(operator)) {
+        return true;
+      }
+    }
+    return false;
   }
 
+  private static Label compile(String expression) {
+    try {
+      return Label.parseExpression(expression);
+    } catch (ANTLRException e) {
+      throw new IllegalArgumentException(
+          "Invalid label expression: " + expression, e);
+    }
+  }
+
+  /**
+   * The label expression, parsed once rather than on every evaluation.
+   */
+  @Nullable private transient volatile Label compiled;
+
   /**
    * @return the required minimum number of executors.
    */
@@ -67,49 +116,40 @@ public class ExecutorCheck extends HealthCheck {
   }
 
   /**
-   * @return the labels to check.
+   * @return the labels to check, of which a node needs at least one: either
+   * those of the list, or the single label expression.
    */
   public Set<? extends Label> getLabels() {
-    return labels;
+    if (labelExpression == null) {
+      return labels;
+    }
+    Label expression = compiled;
+    if (expression == null) {
+      // Loaded from disk, where only the text is kept.
+      expression = compile(labelExpression);
+      compiled = expression;
+    }
+    return ImmutableSet.of(expression);
   }
 
   /**
-   * @return the labels
+   * @return the labels, space separated, or the label expression.
    */
   public String getLabelsSsv() {
-    return Joiner.on(" ").join(getLabels());
-  }
-
-  private Set<Node> getNodes(Label label) {
-    // Label#getNodes() catches the matching nodes the first time it is called,
-    // and thus won't update its results if new nodes are added/removed.
-    // We work around by cloning to new Label object every time.
-    Label cloned = new LabelAtom(label.getName());
-    return cloned.getNodes();
+    return labelExpression != null
+        ? labelExpression : Joiner.on(" ").join(getLabels());
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   *
+   * The executors are counted by the {@link ExecutorCapacityIndex}, which
+   * keeps track of nodes as they change rather than walking all of them here.
+   */
   @Override
   public Result perform(TaskListener taskListener) {
-    Set<Node> toCheck = Sets.newHashSet();
-    if (getLabels().isEmpty()) {
-      toCheck.addAll(Jenkins.getActiveInstance().getNodes());
-      // Jenkins#getNodes() excludes the master
-      toCheck.add(Jenkins.getActiveInstance());
-    } else {
-      for (Label label : getLabels()) {
-        toCheck.addAll(getNodes(label));
-      }
-    }
-
-    int numExecutors = 0;
-    for (Node node : toCheck) {
-      Computer computer = node.toComputer();
-      if ((computer == null) || computer.isOffline()) {
-        continue;
-      }
-      numExecutors += node.getNumExecutors();
-    }
+    int numExecutors =
+        ExecutorCapacityIndex.get().getOnlineExecutors(getLabels());
     if (numExecutors < getMinExecutors()) {
       taskListener.error(Messages.ExecutorCheck_ErrorMessage(
               numExecutors, getMinExecutors(),
@@ -153,12 +193,29 @@ public class ExecutorCheck extends HealthCheck {
       return comps;
     }
 
+    /**
+     * Reject label expressions that do not parse.
+     */
+    public FormValidation doCheckLabelsSsv(@QueryParameter String value) {
+      if (isExpression(value)) {
+        try {
+          Label.parseExpression(value);
+        } catch (ANTLRException e) {
+          return FormValidation.error(
+              Messages.ExecutorCheck_InvalidExpression(e.getMessage()));
+        }
+      }
+      return FormValidation.ok();
+    }
+
   }
 
   /** {@inheritDoc} */
   @Override
   public String toString() {
     return String.format("ExecutorCheck [label={%s},minExecutors=%d]",
-        Joiner.on(",").join(labels), minExecutors);
+        labelExpression != null
+            ? labelExpression : Joiner.on(",").join(labels),
+        minExecutors);
   }
 }
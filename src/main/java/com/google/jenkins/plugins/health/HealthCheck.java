@@ -15,10 +15,25 @@
  */
 package com.google.jenkins.plugins.health;
 
-import java.io.ByteArrayOutputStream;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import com.google.common.base.Charsets;
+import javax.annotation.Nullable;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.jenkins.plugins.health.lib.DerivedPageComponent;
 
 import hudson.ExtensionPoint;
@@ -27,7 +42,8 @@ import hudson.model.Descriptor;
 import hudson.model.Result;
 import hudson.model.TaskListener;
 
-import hudson.util.StreamTaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.model.Jenkins;
 
 /**
@@ -39,6 +55,65 @@ public abstract class HealthCheck
     extends AbstractDescribableImpl<HealthCheck>
     implements DerivedPageComponent<HealthCheckReport>, ExtensionPoint {
 
+  /**
+   * The number of seconds a check may run when no timeout is configured:
+   * none, so that checks run on the thread evaluating their zone, as they
+   * did before timeouts could be configured.
+   */
+  public static final int DEFAULT_TIMEOUT = 0;
+
+  /**
+   * The most threads running checks that have a timeout at once, unless set
+   * otherwise with the system property of the same name as this class,
+   * followed by {@code .timeoutThreads}.  Checks beyond that wait for a
+   * thread before their timeout starts.
+   */
+  public static final int TIMEOUT_THREADS = Math.max(1, Integer.getInteger(
+      HealthCheck.class.getName() + ".timeoutThreads", 16));
+
+  /**
+   * The most seconds a check with a timeout waits for a thread, unless set
+   * otherwise with the system property of the same name as this class,
+   * followed by {@code .queueSeconds}.  Past that, it is reported as timed
+   * out without having run, which only happens once the threads are held by
+   * checks that ignore being interrupted.
+   */
+  public static final int QUEUE_SECONDS = Math.max(1, Integer.getInteger(
+      HealthCheck.class.getName() + ".queueSeconds", 60));
+
+  /**
+   * Runs the checks that have a timeout, so that the thread asking for the
+   * result can give up on them.  A check that ignores being interrupted
+   * holds on to its thread for as long as it keeps running, which is why it
+   * is not run again until it stops.
+   */
+  private static ThreadPoolExecutor timeoutExecutor;
+
+  @VisibleForTesting
+  static synchronized ThreadPoolExecutor getTimeoutExecutor() {
+    if (timeoutExecutor == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          TIMEOUT_THREADS, TIMEOUT_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new NamingThreadFactory(new DaemonThreadFactory(),
+              HealthCheck.class.getSimpleName()));
+      executor.allowCoreThreadTimeOut(true);
+      timeoutExecutor = executor;
+    }
+    return timeoutExecutor;
+  }
+
+  /**
+   * Stop the threads running checks that have a timeout, interrupting them.
+   * Checks evaluated afterwards get new ones.
+   */
+  static synchronized void shutdownTimeoutExecutor() {
+    if (timeoutExecutor != null) {
+      timeoutExecutor.shutdownNow();
+      timeoutExecutor = null;
+    }
+  }
+
   /**
    * @return {@link Descriptor}s of all {@link HealthCheck} extensions.
    */
@@ -46,6 +121,70 @@ public abstract class HealthCheck
     return Jenkins.getActiveInstance().getDescriptorList(HealthCheck.class);
   }
 
+  /**
+   * @return the number of seconds this check may run before it is interrupted
+   * and reported as timed out, or zero if it may run indefinitely.
+   */
+  public int getTimeout() {
+    return timeout == null ? DEFAULT_TIMEOUT : timeout;
+  }
+
+  /**
+   * @param timeout the number of seconds this check may run, zero to let it
+   * run indefinitely.
+   */
+  @DataBoundSetter
+  public void setTimeout(int timeout) {
+    this.timeout = Math.max(0, timeout);
+  }
+  // Boxed so that checks persisted before this existed pick up the default.
+  @Nullable private Integer timeout;
+
+  /**
+   * The number of kilobytes of log kept per evaluation when no limit is
+   * configured.
+   */
+  public static final int DEFAULT_LOG_LIMIT = 64;
+
+  /**
+   * @return the number of kilobytes of log kept per evaluation of this check,
+   * or zero to keep all of it.  Beyond the limit, the beginning and the end
+   * of the log are kept.
+   */
+  public int getLogLimit() {
+    return logLimit == null ? DEFAULT_LOG_LIMIT : logLimit;
+  }
+
+  /**
+   * @param logLimit the number of kilobytes of log to keep per evaluation,
+   * zero to keep all of it.
+   */
+  @DataBoundSetter
+  public void setLogLimit(int logLimit) {
+    this.logLimit = Math.max(0, logLimit);
+  }
+  // Boxed so that checks persisted before this existed pick up the default.
+  @Nullable private Integer logLimit;
+
+  /**
+   * @return the running totals of the evaluations of this check since it was
+   * loaded or configured.
+   */
+  public HealthCheckStatistics getStatistics() {
+    HealthCheckStatistics current = statistics;
+    if (current == null) {
+      synchronized (this) {
+        if (statistics == null) {
+          statistics = new HealthCheckStatistics();
+        }
+        current = statistics;
+      }
+    }
+    return current;
+  }
+  // Lazily, as XStream does not run initializers of transient fields.
+  private transient volatile HealthCheckStatistics statistics;
+
   /**
    * Subclass needs to implement its own health check logic here.
    * @param taskListener the logger to capture logs from performing the checks.
@@ -54,14 +193,124 @@ public abstract class HealthCheck
    */
   public abstract Result perform(TaskListener taskListener);
 
+  /**
+   * {@inheritDoc}
+   *
+   * How long this took, and what it reported, is recorded in {@link
+   * #getStatistics()}.
+   */
   @Override
   public HealthCheckReport performDerivation() {
-    ByteArrayOutputStream message = new ByteArrayOutputStream();
-    StreamTaskListener listener =
-        new StreamTaskListener(message, Charsets.UTF_8);
-    Result result = perform(listener);
-    listener.closeQuietly();
-    return new HealthCheckReport(result,
-        new String(message.toByteArray(), Charsets.UTF_8));
+    long start = System.nanoTime();
+    HealthCheckReport report = derive();
+    getStatistics().record(report, System.nanoTime() - start);
+    return report;
+  }
+
+  private HealthCheckReport derive() {
+    Run stuck = abandoned;
+    if (stuck != null && stuck.isRunning()) {
+      // Rather than tie up one more thread with it.
+      return HealthCheckReport.timedOut(getTimeout(), "");
+    }
+    LogCapture capture = LogCapture.acquire(
+        (int) Math.min(Integer.MAX_VALUE, getLogLimit() * 1024L));
+    boolean reusable = true;
+    try {
+      Result result;
+      if (getTimeout() <= 0) {
+        result = perform(capture.getListener());
+      } else {
+        Run run = new Run(capture.getListener());
+        ThreadPoolExecutor executor = getTimeoutExecutor();
+        Future<Result> future = executor.submit(run);
+        long timeout = TimeUnit.SECONDS.toNanos(getTimeout());
+        try {
+          // Waiting for a thread, behind other checks, does not count.
+          if (!run.awaitStart(TimeUnit.SECONDS.toNanos(QUEUE_SECONDS))) {
+            throw new TimeoutException();
+          }
+          result = Uninterruptibles.getUninterruptibly(future,
+              timeout - run.getRunningNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        } catch (TimeoutException e) {
+          future.cancel(true);
+          // In case it was still waiting for a thread.
+          executor.remove((Runnable) future);
+          abandoned = run;
+          // Whatever the check logged so far may tell where it got stuck.
+          String log = capture.getLog();
+          // The check may keep logging for as long as it ignores that.
+          reusable = false;
+          capture.close();
+          return HealthCheckReport.timedOut(getTimeout(), log);
+        }
+      }
+      return HealthCheckReport.of(result, capture.getLog());
+    } finally {
+      capture.release(reusable);
+    }
+  }
+
+  /**
+   * The last evaluation that timed out, which may still be running if it
+   * ignored being interrupted.
+   */
+  @Nullable private transient volatile Run abandoned;
+
+  /**
+   * Runs {@link #perform(TaskListener)} on a separate thread, as whoever is
+   * asking for the result, and tells whether it is still running.
+   */
+  private final class Run implements Callable<Result> {
+    private final TaskListener listener;
+    private final SecurityContext context =
+        SecurityContextHolder.getContext();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile long startedNanos;
+    private volatile boolean running;
+
+    Run(TaskListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public Result call() {
+      startedNanos = System.nanoTime();
+      running = true;
+      started.countDown();
+      SecurityContext previous = SecurityContextHolder.getContext();
+      SecurityContextHolder.setContext(context);
+      try {
+        return perform(listener);
+      } finally {
+        SecurityContextHolder.setContext(previous);
+        running = false;
+      }
+    }
+
+    /**
+     * @return whether {@link #perform} started and did not return yet.
+     */
+    boolean isRunning() {
+      return running;
+    }
+
+    /**
+     * @param timeoutNanos how long to wait for a thread to run this.
+     * @return whether {@link #perform} started within that time.
+     */
+    boolean awaitStart(long timeoutNanos) {
+      return Uninterruptibles.awaitUninterruptibly(
+          started, timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time since {@link #perform} started, in nanoseconds.
+     */
+    long getRunningNanos() {
+      return System.nanoTime() - startedNanos;
+    }
   }
 }
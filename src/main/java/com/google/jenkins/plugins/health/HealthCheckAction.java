@@ -15,6 +15,10 @@
  */
 package com.google.jenkins.plugins.health;
 
+import java.io.IOException;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -59,6 +63,19 @@ public class HealthCheckAction extends DerivedPageAction {
         Jenkins.getActiveInstance().getExtensionList(HealthCheckManager.class));
   }
 
+  /**
+   * Expose the latest result of each zone and check, and how often and for
+   * how long each check ran, for Prometheus to scrape from
+   * "/health/metrics".  Nothing is evaluated to serve this.
+   */
+  public void doMetrics(StaplerRequest req, StaplerResponse rsp)
+      throws IOException {
+    rsp.setContentType(HealthMetricsWriter.CONTENT_TYPE);
+    rsp.setHeader("Cache-Control", "no-cache");
+    new HealthMetricsWriter(rsp.getWriter(),
+        getDerivedPageManager().getDerivedPages()).write();
+  }
+
   /** {@inheritDoc} */
   @Override
   protected Permission getReadPermission() {
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import hudson.model.Result;
+
+/**
+ * The latest evaluations of a single {@link HealthCheck}: when each ran, its
+ * {@link Result} and how long it took.
+ *
+ * Evaluations are kept in a ring buffer of primitive arrays, so recording
+ * one allocates nothing, and the oldest is overwritten once it is full.
+ */
+public final class HealthCheckHistory {
+  /**
+   * How many evaluations are kept per check, unless set otherwise with the
+   * system property of the same name as this class, followed by
+   * {@code .capacity}.
+   */
+  public static final int CAPACITY = Math.max(1, Integer.getInteger(
+      HealthCheckHistory.class.getName() + ".capacity", 100));
+
+  /**
+   * The {@link Result}s that can be recorded, indexed by their ordinal.
+   */
+  private static final Result[] RESULTS = new Result[5];
+  static {
+    for (Result result : new Result[] {Result.SUCCESS, Result.UNSTABLE,
+        Result.FAILURE, Result.NOT_BUILT, Result.ABORTED}) {
+      RESULTS[result.ordinal] = result;
+    }
+  }
+
+  private final long[] timestamps;
+  private final byte[] results;
+  private final int[] latencies;
+  /** Where the next evaluation goes.  Guarded by {@code this}. */
+  private int next;
+  /** How many evaluations are kept.  Guarded by {@code this}. */
+  private int size;
+
+  /**
+   * @param capacity the number of evaluations to keep.
+   */
+  public HealthCheckHistory(int capacity) {
+    checkArgument(capacity > 0);
+    this.timestamps = new long[capacity];
+    this.results = new byte[capacity];
+    this.latencies = new int[capacity];
+  }
+
+  /**
+   * Record an evaluation, replacing the oldest one if the history is full.
+   *
+   * @param timestamp when the evaluation finished, in milliseconds since the
+   * epoch.
+   * @param result the result of the evaluation.
+   * @param elapsedNanos how long the evaluation took.
+   */
+  public synchronized void record(long timestamp, Result result,
+      long elapsedNanos) {
+    timestamps[next] = timestamp;
+    results[next] = (byte) result.ordinal;
+    latencies[next] = (int) Math.min(Integer.MAX_VALUE,
+        TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    next = (next + 1) % timestamps.length;
+    size = Math.min(size + 1, timestamps.length);
+  }
+
+  /**
+   * @return a copy of the evaluations kept, oldest first.
+   */
+  public synchronized Samples getSamples() {
+    long[] copiedTimestamps = new long[size];
+    Result[] copiedResults = new Result[size];
+    int[] copiedLatencies = new int[size];
+    int oldest = (next - size + timestamps.length) % timestamps.length;
+    for (int i = 0; i < size; i++) {
+      int index = (oldest + i) % timestamps.length;
+      copiedTimestamps[i] = timestamps[index];
+      copiedResults[i] = RESULTS[results[index]];
+      copiedLatencies[i] = latencies[index];
+    }
+    return new Samples(copiedTimestamps, copiedResults, copiedLatencies);
+  }
+
+  /**
+   * A consistent copy of a {@link HealthCheckHistory}, oldest first.
+   */
+  public static final class Samples {
+    private final long[] timestamps;
+    private final Result[] results;
+    private final int[] latencyMicros;
+
+    Samples(long[] timestamps, Result[] results, int[] latencyMicros) {
+      this.timestamps = timestamps;
+      this.results = results;
+      this.latencyMicros = latencyMicros;
+    }
+
+    /**
+     * @return when each evaluation finished, in milliseconds since the
+     * epoch.
+     */
+    public long[] getTimestamps() {
+      return timestamps.clone();
+    }
+
+    /**
+     * @return the result of each evaluation.
+     */
+    public Result[] getResults() {
+      return results.clone();
+    }
+
+    /**
+     * @return how long each evaluation took, in microseconds.
+     */
+    public int[] getLatencyMicros() {
+      return latencyMicros.clone();
+    }
+
+    /**
+     * @return the number of evaluations.
+     */
+    public int size() {
+      return timestamps.length;
+    }
+
+    /**
+     * @return when the evaluation at the given index finished, in
+     * milliseconds since the epoch.
+     */
+    public long getTimestamp(int index) {
+      return timestamps[index];
+    }
+
+    /**
+     * @return the result of the evaluation at the given index.
+     */
+    public Result getResult(int index) {
+      return results[index];
+    }
+
+    /**
+     * @return how long the evaluation at the given index took, in
+     * microseconds.
+     */
+    public int getLatencyMicros(int index) {
+      return latencyMicros[index];
+    }
+
+    /**
+     * @return how many times the result changed from one evaluation to the
+     * next, which is high for a flapping check.
+     */
+    public int getChanges() {
+      int changes = 0;
+      for (int i = 1; i < results.length; i++) {
+        if (results[i] != results[i - 1]) {
+          changes++;
+        }
+      }
+      return changes;
+    }
+  }
+}
@@ -15,16 +15,26 @@
  */
 package com.google.jenkins.plugins.health;
 
+import java.io.File;
 import java.io.IOException;
 
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.jenkins.plugins.health.lib.DerivedPageManager;
 
 import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
 import hudson.model.Descriptor;
 
+import jenkins.model.Jenkins;
+
 /**
  * Managing {@link HealthCheck} configurations.
  *
@@ -35,16 +45,34 @@ import hudson.model.Descriptor;
  */
 @Extension
 public class HealthCheckManager extends DerivedPageManager<HealthZone> {
+  private static final Logger LOGGER =
+      Logger.getLogger(HealthCheckManager.class.getName());
+
   /**
-   * Load an instance of {@link HealthCheckManager} from Jenkins configuration
-   * from disk if the configuration file (by {@link #getConfigFile()}) exists.
-   *
-   * Otherwise create a new instance.
+   * Create an instance of {@link HealthCheckManager}, whose configuration is
+   * loaded from disk once Jenkins is done loading extensions, by
+   * {@link #loadOnStartup()}, or on first access.
    */
   public HealthCheckManager() throws IOException {
     super(HealthZone.class);
   }
 
+  /**
+   * Load the configured zones off the startup path: until they are loaded,
+   * the health pages answer that Jenkins is starting.  From then on, the
+   * configuration file is reloaded whenever it is changed on disk.
+   */
+  @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+  public static void loadOnStartup() {
+    HealthCheckManager manager = Jenkins.getActiveInstance()
+        .getExtensionList(HealthCheckManager.class)
+        .get(HealthCheckManager.class);
+    if (manager != null) {
+      manager.loadInBackground();
+      manager.watchConfigFile();
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   protected String getConfigFileName() {
@@ -69,6 +97,74 @@ public class HealthCheckManager extends DerivedPageManager<HealthZone> {
     return Messages.HealthCheckManager_Description();
   }
 
+  /**
+   * @return the store of the outcomes of every {@link HealthCheck}, kept in
+   * "healthChecks-history" next to the configuration file, or null if it
+   * cannot be opened, or was closed as Jenkins shuts down.  It is opened on
+   * first use.
+   */
+  @Nullable
+  public HealthHistoryStore getHistoryStore() {
+    HealthHistoryStore store = historyStore;
+    if (store == null && !historyStoreUnavailable) {
+      synchronized (this) {
+        store = historyStore;
+        if (store == null && !historyStoreUnavailable) {
+          File directory = new File(Jenkins.getActiveInstance().getRootDir(),
+              "healthChecks-history");
+          try {
+            store = new HealthHistoryStore(directory);
+            historyStore = store;
+          } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot open " + directory, e);
+            historyStoreUnavailable = true;
+          }
+        }
+      }
+    }
+    return store;
+  }
+  private transient volatile HealthHistoryStore historyStore;
+  private transient volatile boolean historyStoreUnavailable;
+
+  /**
+   * Close the store of outcomes, if it was opened, so that what was appended
+   * is written out and its files are released.  It is not opened again.
+   */
+  @VisibleForTesting
+  synchronized void closeHistoryStore() {
+    HealthHistoryStore store = historyStore;
+    historyStore = null;
+    historyStoreUnavailable = true;
+    if (store != null) {
+      try {
+        store.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Cannot close the health check history", e);
+      }
+    }
+  }
+
+  /**
+   * As Jenkins shuts down, stop refreshing zones and watching the
+   * configuration file, stop the threads doing so, and only then close the
+   * store of outcomes those refreshes append to.
+   */
+  @Terminator
+  public static void stopOnShutdown() {
+    HealthCheckManager manager = Jenkins.getActiveInstance()
+        .getExtensionList(HealthCheckManager.class)
+        .get(HealthCheckManager.class);
+    if (manager != null) {
+      manager.shutdown();
+    }
+    DerivedPageManager.shutdownExecutors();
+    HealthCheck.shutdownTimeoutExecutor();
+    if (manager != null) {
+      manager.closeHistoryStore();
+    }
+  }
+
   /**
    * @return {@link Descriptor}s of registered {@link HealthCheck} extensions.
    */
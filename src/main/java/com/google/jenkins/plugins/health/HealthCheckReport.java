@@ -15,9 +15,15 @@
  */
 package com.google.jenkins.plugins.health;
 
+import java.io.IOException;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.jenkins.plugins.health.lib.DerivedPageComponentReport;
+import com.google.jenkins.plugins.health.lib.DerivedPageJsonWriter;
 
 import hudson.model.Result;
 
@@ -26,8 +32,100 @@ import hudson.model.Result;
  */
 @ExportedBean
 public class HealthCheckReport extends DerivedPageComponentReport<String> {
+  private final boolean timedOut;
+
   /** {inheritDoc} */
   public HealthCheckReport(Result result, String value) {
+    this(result, value, false);
+  }
+
+  private HealthCheckReport(Result result, String value, boolean timedOut) {
     super(result, value);
+    this.timedOut = timedOut;
+  }
+
+  /**
+   * For subclasses that override {@link #getValue()} to render the log only
+   * when it is read.
+   *
+   * @param result the {@link Result} of the check.
+   */
+  protected HealthCheckReport(Result result) {
+    super(result);
+    this.timedOut = false;
+  }
+
+  /**
+   * The reports of checks that logged nothing, made once up front.
+   */
+  private static final Map<Result, HealthCheckReport> SILENT;
+  static {
+    ImmutableMap.Builder<Result, HealthCheckReport> silent =
+        ImmutableMap.builder();
+    for (Result result : new Result[] {Result.SUCCESS, Result.UNSTABLE,
+        Result.FAILURE, Result.NOT_BUILT, Result.ABORTED}) {
+      silent.put(result, new HealthCheckReport(result, ""));
+    }
+    SILENT = silent.build();
+  }
+
+  /**
+   * @return a report of the given result and log, shared with other reports
+   * of the same result if the log is empty.
+   */
+  public static HealthCheckReport of(Result result, String log) {
+    if (log.isEmpty()) {
+      HealthCheckReport silent = SILENT.get(result);
+      if (silent != null) {
+        return silent;
+      }
+    }
+    return new HealthCheckReport(result, log);
+  }
+
+  /**
+   * @param elapsedMillis how long the check had been running when it was
+   * given up on.
+   * @param log whatever the check logged before that.
+   * @param timeout the timeout of the check, in seconds.
+   * @param log what the check logged before it was given up on.
+   * @return a failed report for a {@link HealthCheck} that did not complete
+   * within its timeout.  The report does not say how long the check ran
+   * for, so that it equals the report of the previous time it timed out.
+   */
+  public static HealthCheckReport timedOut(int timeout, String log) {
+    return new HealthCheckReport(Result.FAILURE,
+        String.format("%s%n%s", Messages.HealthCheck_TimedOut(timeout), log),
+        true);
+  }
+
+  /**
+   * @return whether the check was interrupted for running past its timeout,
+   * rather than completing with this report's result.
+   */
+  @Exported
+  public boolean isTimedOut() {
+    return timedOut;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void writeJsonProperties(DerivedPageJsonWriter json)
+      throws IOException {
+    super.writeJsonProperties(json);
+    json.name("timedOut").value(timedOut);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object other) {
+    return super.equals(other)
+        && timedOut == ((HealthCheckReport) other).timedOut;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + (timedOut ? 1 : 0);
   }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+
+import hudson.model.Result;
+
+/**
+ * Running totals of the evaluations of a single {@link HealthCheck}: how
+ * often it ran, how often it did not succeed or timed out, and a histogram
+ * of how long it took, along with a {@link HealthCheckHistory} of the
+ * latest ones.
+ *
+ * The totals are kept in atomic counters, so that recording an evaluation
+ * never blocks on them and reading them never re-runs the check.
+ */
+public final class HealthCheckStatistics {
+  /**
+   * The upper bounds of the latency histogram buckets, in seconds.  A last,
+   * unbounded bucket catches everything slower.
+   */
+  private static final double[] BUCKET_SECONDS =
+      {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+  private static final long[] BUCKET_NANOS =
+      new long[BUCKET_SECONDS.length];
+  static {
+    for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+      BUCKET_NANOS[i] =
+          (long) (BUCKET_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  private final AtomicLongArray buckets =
+      new AtomicLongArray(BUCKET_SECONDS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  @Nullable private volatile Result lastResult;
+  private final HealthCheckHistory history =
+      new HealthCheckHistory(HealthCheckHistory.CAPACITY);
+
+  /**
+   * Account for one evaluation of the check.
+   *
+   * @param report what the evaluation reported.
+   * @param elapsedNanos how long the evaluation took.
+   */
+  public void record(HealthCheckReport report, long elapsedNanos) {
+    int bucket = 0;
+    while (bucket < BUCKET_NANOS.length
+        && elapsedNanos > BUCKET_NANOS[bucket]) {
+      bucket++;
+    }
+    buckets.incrementAndGet(bucket);
+    totalNanos.addAndGet(elapsedNanos);
+    if (report.getResult().isWorseThan(Result.SUCCESS)) {
+      failures.incrementAndGet();
+    }
+    if (report.isTimedOut()) {
+      timeouts.incrementAndGet();
+    }
+    lastResult = report.getResult();
+    history.record(System.currentTimeMillis(), report.getResult(),
+        elapsedNanos);
+    // Last, so that a reader seeing a count sees the buckets that make it up.
+    count.incrementAndGet();
+  }
+
+  /**
+   * @return the number of evaluations recorded.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return the number of evaluations that did not succeed.
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return the number of evaluations that were given up on for running
+   * past the timeout of the check.
+   */
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /**
+   * @return the total time spent in evaluations, in seconds.
+   */
+  public double getTotalSeconds() {
+    return totalNanos.get() / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+
+  /**
+   * @return the result of the latest evaluation, null if there was none.
+   */
+  @Nullable public Result getLastResult() {
+    return lastResult;
+  }
+
+  /**
+   * @return the latest evaluations of the check.
+   */
+  public HealthCheckHistory getHistory() {
+    return history;
+  }
+
+  /**
+   * @return the upper bounds of the latency histogram buckets, in seconds,
+   * not including the last, unbounded one.
+   */
+  public static double[] getBucketBounds() {
+    return BUCKET_SECONDS.clone();
+  }
+
+  /**
+   * @return the number of evaluations that took at most as many seconds as
+   * each of {@link #getBucketBounds()}, followed by the count of all of them.
+   */
+  public long[] getCumulativeBuckets() {
+    long[] cumulative = new long[buckets.length()];
+    long total = 0;
+    for (int i = 0; i < cumulative.length; i++) {
+      total += buckets.get(i);
+      cumulative[i] = total;
+    }
+    return cumulative;
+  }
+}
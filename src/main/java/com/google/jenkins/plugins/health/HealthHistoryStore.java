@@ -0,0 +1,514 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
+
+import hudson.model.Result;
+
+/**
+ * An append-only, on-disk log of health check outcomes that survives
+ * restarts.
+ *
+ * Outcomes are written as fixed-size binary records to memory-mapped
+ * segment files, so that appending one is a handful of stores into memory,
+ * with no serialization.  Zone and check names are stored once, in a
+ * separate file, and referred to by number.  Once a segment is full, the
+ * next one is started, and only the latest few segments are kept.
+ *
+ * Records are appended in timestamp order, which lets {@link #scan} find
+ * the start of a time range by binary search.
+ */
+public final class HealthHistoryStore implements Closeable {
+  private static final Logger LOGGER =
+      Logger.getLogger(HealthHistoryStore.class.getName());
+
+  /**
+   * The magic number, the version and the timestamp of the first record.
+   */
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * The timestamp, the name number, the latency in microseconds, the
+   * ordinal of the result, and padding.  The timestamp of a record not
+   * written yet is zero, as the file is zero-filled when created.
+   */
+  private static final int RECORD_SIZE = 20;
+
+  /**
+   * The size of each segment file, in bytes, unless set otherwise with the
+   * system property of the same name as this class, followed by
+   * {@code .segmentSize}.
+   */
+  public static final int SEGMENT_SIZE = Math.max(HEADER_SIZE + 1024,
+      Integer.getInteger(
+          HealthHistoryStore.class.getName() + ".segmentSize", 4 << 20));
+
+  /**
+   * How many segment files are kept, unless set otherwise with the system
+   * property of the same name as this class, followed by
+   * {@code .segments}.
+   */
+  public static final int RETAINED_SEGMENTS = Math.max(1, Integer.getInteger(
+      HealthHistoryStore.class.getName() + ".segments", 8));
+
+  private static final int MAGIC = 0x48434853; // "HCHS"
+  private static final int VERSION = 1;
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String NAMES_FILE = "names.bin";
+
+  /**
+   * The {@link Result}s that can be recorded, indexed by their ordinal.
+   */
+  private static final Result[] RESULTS = new Result[5];
+  static {
+    for (Result result : new Result[] {Result.SUCCESS, Result.UNSTABLE,
+        Result.FAILURE, Result.NOT_BUILT, Result.ABORTED}) {
+      RESULTS[result.ordinal] = result;
+    }
+  }
+
+  /**
+   * Receives the records of a {@link #scan}.
+   */
+  public interface Visitor {
+    /**
+     * @return whether to continue with the next record.
+     */
+    boolean visit(String zone, String check, long timestamp, Result result,
+        int latencyMicros);
+  }
+
+  private final File directory;
+  private final int segmentSize;
+  private final int retainedSegments;
+
+  /** The number of each name pair, by zone then check. */
+  private final ConcurrentMap<String, ConcurrentMap<String, Integer>> ids =
+      Maps.newConcurrentMap();
+  /** The name pairs, zone then check, by number.  Guarded by {@code this}. */
+  private final List<String[]> names = Lists.newArrayList();
+  private final DataOutputStream namesOut;
+
+  /** Oldest first.  Guarded by {@code this}. */
+  private final List<Segment> segments = Lists.newArrayList();
+  /** Guarded by {@code this}. */
+  private long lastTimestamp;
+  /** Guarded by {@code this}. */
+  private boolean closed;
+
+  /**
+   * Open the store in the given directory, creating it if needed.
+   */
+  public HealthHistoryStore(File directory) throws IOException {
+    this(directory, SEGMENT_SIZE, RETAINED_SEGMENTS);
+  }
+
+  @VisibleForTesting
+  HealthHistoryStore(File directory, int segmentSize, int retainedSegments)
+      throws IOException {
+    checkArgument(segmentSize >= HEADER_SIZE + RECORD_SIZE);
+    checkArgument(retainedSegments > 0);
+    this.directory = checkNotNull(directory);
+    this.segmentSize = segmentSize;
+    this.retainedSegments = retainedSegments;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    loadNames();
+    this.namesOut = new DataOutputStream(
+        new FileOutputStream(new File(directory, NAMES_FILE), true));
+    loadSegments();
+  }
+
+  /**
+   * Read the name pairs, and cut off what follows the last complete one, such
+   * as a partial entry from a crash, so that new entries are appended right
+   * after it.
+   */
+  private void loadNames() throws IOException {
+    File file = new File(directory, NAMES_FILE);
+    if (!file.exists()) {
+      return;
+    }
+    CountingInputStream counting = new CountingInputStream(
+        new BufferedInputStream(new FileInputStream(file)));
+    DataInputStream in = new DataInputStream(counting);
+    long complete = 0;
+    try {
+      while (true) {
+        String zone = in.readUTF();
+        String check = in.readUTF();
+        register(zone, check, names.size());
+        complete = counting.getCount();
+      }
+    } catch (EOFException e) {
+      // Done, possibly with a partial entry from a crash.
+    } catch (UTFDataFormatException e) {
+      LOGGER.log(Level.WARNING, "Dropping the damaged end of " + file, e);
+    } finally {
+      in.close();
+    }
+    if (complete < file.length()) {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(complete);
+      } finally {
+        raf.close();
+      }
+    }
+  }
+
+  private void register(String zone, String check, int id) {
+    names.add(new String[] {zone, check});
+    ConcurrentMap<String, Integer> checks = ids.get(zone);
+    if (checks == null) {
+      checks = Maps.newConcurrentMap();
+      ids.put(zone, checks);
+    }
+    checks.put(check, id);
+  }
+
+  private void loadSegments() throws IOException {
+    String[] files = directory.list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    // Zero-padded sequence numbers sort the same as text.
+    Arrays.sort(files);
+    for (String name : files) {
+      try {
+        Segment segment = Segment.open(new File(directory, name),
+            Long.parseLong(name.substring(0, name.length()
+                - SEGMENT_SUFFIX.length()), 16), segmentSize);
+        segments.add(segment);
+        lastTimestamp = Math.max(lastTimestamp, segment.getLastTimestamp());
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Skipping unreadable " + name, e);
+      } catch (NumberFormatException e) {
+        LOGGER.log(Level.WARNING, "Skipping unexpected " + name, e);
+      }
+    }
+  }
+
+  /**
+   * @return the number of the given name pair, registering it if new, or -1
+   * if the store is closed.
+   */
+  private int idOf(String zone, String check) throws IOException {
+    ConcurrentMap<String, Integer> checks = ids.get(zone);
+    Integer id = checks == null ? null : checks.get(check);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      if (closed) {
+        return -1;
+      }
+      checks = ids.get(zone);
+      id = checks == null ? null : checks.get(check);
+      if (id == null) {
+        id = names.size();
+        namesOut.writeUTF(zone);
+        namesOut.writeUTF(check);
+        namesOut.flush();
+        register(zone, check, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Append an outcome.  Its timestamp is the current time, or that of the
+   * previous record if the clock went back.  Does nothing once the store is
+   * closed, such as for an evaluation that ends as Jenkins shuts down.
+   *
+   * @param zone the name of the zone.
+   * @param check the identifier of the check within the zone.
+   * @param result the result of the evaluation.
+   * @param elapsedNanos how long the evaluation took.
+   */
+  public void append(String zone, String check, Result result,
+      long elapsedNanos) throws IOException {
+    int id = idOf(zone, check);
+    if (id < 0) {
+      return;
+    }
+    int latency = (int) Math.min(Integer.MAX_VALUE,
+        TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+      Segment current = segments.isEmpty()
+          ? null : segments.get(segments.size() - 1);
+      if (current == null || current.isFull()) {
+        current = rotate(current, timestamp);
+      }
+      current.append(timestamp, id, latency, result.ordinal);
+      lastTimestamp = timestamp;
+    }
+  }
+
+  /**
+   * Start a new segment, and delete the oldest ones beyond those retained.
+   */
+  private Segment rotate(Segment previous, long timestamp) throws IOException {
+    long sequence = previous == null ? 0 : previous.sequence + 1;
+    Segment segment = Segment.create(
+        new File(directory, String.format("%016x", sequence) + SEGMENT_SUFFIX),
+        sequence, segmentSize, timestamp);
+    segments.add(segment);
+    while (segments.size() > retainedSegments) {
+      Segment oldest = segments.remove(0);
+      oldest.close();
+      if (!oldest.file.delete()) {
+        LOGGER.log(Level.WARNING, "Cannot delete {0}", oldest.file);
+      }
+    }
+    return segment;
+  }
+
+  /**
+   * Visit the records with a timestamp in the given range, oldest first.
+   *
+   * @param from the earliest timestamp to visit, inclusive.
+   * @param to the latest timestamp to visit, inclusive.
+   * @param visitor receives the records.
+   */
+  public void scan(long from, long to, Visitor visitor) {
+    List<Segment> candidates;
+    List<String[]> knownNames;
+    int[] counts;
+    synchronized (this) {
+      candidates = ImmutableList.copyOf(segments);
+      knownNames = ImmutableList.copyOf(names);
+      counts = new int[candidates.size()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = candidates.get(i).count;
+      }
+    }
+    for (int i = 0; i < counts.length; i++) {
+      Segment segment = candidates.get(i);
+      int count = counts[i];
+      if (count == 0 || segment.timestampAt(count - 1) < from) {
+        continue;
+      }
+      if (segment.timestampAt(0) > to) {
+        return;
+      }
+      for (int index = segment.firstAtOrAfter(from, count); index < count;
+           index++) {
+        long timestamp = segment.timestampAt(index);
+        if (timestamp > to) {
+          return;
+        }
+        int id = segment.idAt(index);
+        int ordinal = segment.ordinalAt(index);
+        if (id < 0 || id >= knownNames.size()
+            || ordinal < 0 || ordinal >= RESULTS.length) {
+          continue; // Damaged, or from a crash while writing.
+        }
+        String[] pair = knownNames.get(id);
+        if (!visitor.visit(pair[0], pair[1], timestamp, RESULTS[ordinal],
+            segment.latencyAt(index))) {
+          return;
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    namesOut.close();
+    for (Segment segment : segments) {
+      segment.close();
+    }
+    segments.clear();
+  }
+
+  /**
+   * A single memory-mapped segment file.
+   */
+  private static final class Segment {
+    private final File file;
+    private final long sequence;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    /** The number of records written.  Guarded by the store. */
+    private int count;
+
+    private Segment(File file, long sequence, RandomAccessFile raf,
+        int size) throws IOException {
+      this.file = file;
+      this.sequence = sequence;
+      this.raf = raf;
+      this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+          size);
+      this.capacity = (size - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    static Segment create(File file, long sequence, int size,
+        long firstTimestamp) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      raf.setLength(size);
+      Segment segment = new Segment(file, sequence, raf, size);
+      segment.buffer.putInt(0, MAGIC);
+      segment.buffer.putInt(4, VERSION);
+      segment.buffer.putLong(8, firstTimestamp);
+      return segment;
+    }
+
+    static Segment open(File file, long sequence, int size)
+        throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      Segment segment;
+      try {
+        if (raf.length() < HEADER_SIZE + RECORD_SIZE) {
+          throw new IOException("Truncated segment " + file);
+        }
+        segment = new Segment(file, sequence, raf, (int) raf.length());
+      } catch (IOException e) {
+        raf.close();
+        throw e;
+      }
+      if (segment.buffer.getInt(0) != MAGIC
+          || segment.buffer.getInt(4) != VERSION) {
+        segment.close();
+        throw new IOException("Not a segment " + file);
+      }
+      segment.count = segment.countWritten();
+      return segment;
+    }
+
+    boolean isFull() {
+      return count >= capacity;
+    }
+
+    long getLastTimestamp() {
+      return count == 0 ? 0 : timestampAt(count - 1);
+    }
+
+    void append(long timestamp, int id, int latency, int ordinal) {
+      int offset = offsetOf(count);
+      buffer.putInt(offset + 8, id);
+      buffer.putInt(offset + 12, latency);
+      buffer.put(offset + 16, (byte) ordinal);
+      // Last, as a non-zero timestamp is what marks the record written.
+      buffer.putLong(offset, timestamp);
+      count++;
+    }
+
+    long timestampAt(int index) {
+      return buffer.getLong(offsetOf(index));
+    }
+
+    int idAt(int index) {
+      return buffer.getInt(offsetOf(index) + 8);
+    }
+
+    int latencyAt(int index) {
+      return buffer.getInt(offsetOf(index) + 12);
+    }
+
+    int ordinalAt(int index) {
+      return buffer.get(offsetOf(index) + 16);
+    }
+
+    private static int offsetOf(int index) {
+      return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /**
+     * @return the index of the first of the given number of records with a
+     * timestamp at or after the given one, or that number if there is none.
+     */
+    int firstAtOrAfter(long timestamp, int count) {
+      int low = 0;
+      int high = count;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (timestampAt(middle) >= timestamp) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the number of records written, found by binary search as they
+     * all come before those not written yet.
+     */
+    private int countWritten() {
+      int low = 0;
+      int high = capacity;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (timestampAt(middle) == 0) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+      return low;
+    }
+
+    void close() throws IOException {
+      buffer.force();
+      raf.close();
+    }
+  }
+}
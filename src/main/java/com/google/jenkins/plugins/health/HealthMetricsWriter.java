@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.jenkins.plugins.health.lib.DerivedPageSnapshot;
+
+import hudson.model.Result;
+
+/**
+ * Writes the {@link HealthCheckStatistics} of every check, and the latest
+ * combined result of every zone, in the Prometheus text exposition format.
+ *
+ * Only what was already recorded is written: neither zones nor checks are
+ * evaluated to produce the metrics.
+ */
+final class HealthMetricsWriter {
+  /**
+   * The content type of the Prometheus text exposition format.
+   */
+  static final String CONTENT_TYPE =
+      "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final String PREFIX = "jenkins_health_";
+
+  private final Writer out;
+  private final List<HealthZone> zones;
+
+  /**
+   * @param out where to write the metrics to.
+   * @param zones the zones whose metrics to write.
+   */
+  HealthMetricsWriter(Writer out, List<HealthZone> zones) {
+    this.out = checkNotNull(out);
+    this.zones = ImmutableList.copyOf(zones);
+  }
+
+  /**
+   * Write all the metrics, grouped by metric family as the format requires.
+   */
+  void write() throws IOException {
+    header("zone_success", "gauge",
+        "Whether the latest evaluation of the zone succeeded.");
+    for (HealthZone zone : zones) {
+      DerivedPageSnapshot<HealthCheckReport> snapshot =
+          zone.getLatestSnapshot();
+      if (snapshot != null) {
+        sample("zone_success", zoneLabels(zone),
+            success(snapshot.getCombinedResult()));
+      }
+    }
+
+    header("check_success", "gauge",
+        "Whether the latest evaluation of the check succeeded.");
+    for (HealthZone zone : zones) {
+      List<HealthCheck> checks = zone.getComponents();
+      List<String> labels = checkLabels(zone, checks);
+      for (int i = 0; i < checks.size(); i++) {
+        Result last = checks.get(i).getStatistics().getLastResult();
+        if (last != null) {
+          sample("check_success", labels.get(i), success(last));
+        }
+      }
+    }
+
+    counter("check_runs_total", "Evaluations of the check.");
+    for (HealthZone zone : zones) {
+      List<HealthCheck> checks = zone.getComponents();
+      List<String> labels = checkLabels(zone, checks);
+      for (int i = 0; i < checks.size(); i++) {
+        sample("check_runs_total", labels.get(i),
+            checks.get(i).getStatistics().getCount());
+      }
+    }
+
+    counter("check_failures_total",
+        "Evaluations of the check that did not succeed.");
+    for (HealthZone zone : zones) {
+      List<HealthCheck> checks = zone.getComponents();
+      List<String> labels = checkLabels(zone, checks);
+      for (int i = 0; i < checks.size(); i++) {
+        sample("check_failures_total", labels.get(i),
+            checks.get(i).getStatistics().getFailures());
+      }
+    }
+
+    counter("check_timeouts_total",
+        "Evaluations of the check that ran past its timeout.");
+    for (HealthZone zone : zones) {
+      List<HealthCheck> checks = zone.getComponents();
+      List<String> labels = checkLabels(zone, checks);
+      for (int i = 0; i < checks.size(); i++) {
+        sample("check_timeouts_total", labels.get(i),
+            checks.get(i).getStatistics().getTimeouts());
+      }
+    }
+
+    header("check_duration_seconds", "histogram",
+        "How long evaluations of the check took.");
+    double[] bounds = HealthCheckStatistics.getBucketBounds();
+    for (HealthZone zone : zones) {
+      List<HealthCheck> checks = zone.getComponents();
+      List<String> checkLabels = checkLabels(zone, checks);
+      for (int i = 0; i < checks.size(); i++) {
+        HealthCheckStatistics statistics = checks.get(i).getStatistics();
+        String labels = checkLabels.get(i);
+        long[] buckets = statistics.getCumulativeBuckets();
+        for (int b = 0; b < bounds.length; b++) {
+          sample("check_duration_seconds_bucket",
+              labels + ",le=\"" + bounds[b] + "\"", buckets[b]);
+        }
+        long count = buckets[bounds.length];
+        sample("check_duration_seconds_bucket", labels + ",le=\"+Inf\"",
+            count);
+        sample("check_duration_seconds_sum", labels,
+            statistics.getTotalSeconds());
+        sample("check_duration_seconds_count", labels, count);
+      }
+    }
+    out.flush();
+  }
+
+  private void counter(String name, String help) throws IOException {
+    header(name, "counter", help);
+  }
+
+  private void header(String name, String type, String help)
+      throws IOException {
+    out.write("# HELP " + PREFIX + name + " " + help + "\n");
+    out.write("# TYPE " + PREFIX + name + " " + type + "\n");
+  }
+
+  private void sample(String name, String labels, Object value)
+      throws IOException {
+    out.write(PREFIX + name + "{" + labels + "} " + value + "\n");
+  }
+
+  private static int success(Result result) {
+    return result.isBetterOrEqualTo(Result.SUCCESS) ? 1 : 0;
+  }
+
+  private static String zoneLabels(HealthZone zone) {
+    return "zone=\"" + escape(zone.getName()) + "\"";
+  }
+
+  /**
+   * @return the labels of each of the given checks of the zone, in order.
+   * Checks of the same name, such as two alike {@link ExecutorCheck}s, also
+   * get their position in the zone as an {@code index} label, so that each
+   * series stays unique.
+   */
+  private static List<String> checkLabels(HealthZone zone,
+      List<HealthCheck> checks) {
+    List<String> names = Lists.newArrayListWithCapacity(checks.size());
+    Multiset<String> counts = HashMultiset.create();
+    for (HealthCheck check : checks) {
+      String name = zone.namePageComponent(check);
+      names.add(name);
+      counts.add(name);
+    }
+    List<String> labels = Lists.newArrayListWithCapacity(checks.size());
+    for (int i = 0; i < names.size(); i++) {
+      String name = names.get(i);
+      String label = zoneLabels(zone) + ",check=\"" + escape(name) + "\"";
+      if (counts.count(name) > 1) {
+        label += ",index=\"" + i + "\"";
+      }
+      labels.add(label);
+    }
+    return labels;
+  }
+
+  /**
+   * Escape a label value, as the exposition format requires.
+   */
+  static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"")
+        .replace("\n", "\\n");
+  }
+}
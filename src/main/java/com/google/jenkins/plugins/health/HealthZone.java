@@ -18,18 +18,27 @@ package com.google.jenkins.plugins.health;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Nullable;
+import javax.servlet.ServletOutputStream;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.jenkins.plugins.health.lib.ConditionalApi;
+import com.google.jenkins.plugins.health.lib.DerivedPageJsonWriter;
+import com.google.jenkins.plugins.health.lib.DerivedPageSnapshot;
 import com.google.jenkins.plugins.health.lib.DerivedPageZone;
 
 import hudson.Extension;
@@ -52,6 +61,9 @@ import jenkins.model.Jenkins;
 @ExportedBean
 public class HealthZone extends DerivedPageZone<HealthCheck, HealthCheckReport>
     implements Describable<HealthZone> {
+  private static final Logger LOGGER =
+      Logger.getLogger(HealthZone.class.getName());
+
   /**
    * @param name the name of this {@link HealthZone}.
    * @param healthChecks a list of {@link HealthCheck}s to contain.
@@ -68,11 +80,16 @@ public class HealthZone extends DerivedPageZone<HealthCheck, HealthCheckReport>
   }
 
   public Api getApi() { // for remote access API
-    HealthCheckReport report = getCombinedReport();
-    if (report.getResult().isBetterOrEqualTo(Result.SUCCESS)) {
-      return new Api(this);
+    DerivedPageSnapshot<HealthCheckReport> snapshot = getSnapshot();
+    if (snapshot.getCombinedResult().isBetterOrEqualTo(Result.SUCCESS)) {
+      // The availability ages with the clock, while the reports, and so the
+      // generation, may stay the same: copies cached by clients are let go
+      // stale for no longer than its finest buckets.
+      return new ConditionalApi(this, ConditionalApi.toETag(
+          snapshot.getGeneration(), System.currentTimeMillis()
+              / HealthZoneAvailability.RESOLUTION_MILLIS));
     } else {
-      return new ErrorApi(this, report);
+      return new ErrorApi(this, getCombinedReport());
     }
   }
 
@@ -148,30 +165,189 @@ public class HealthZone extends DerivedPageZone<HealthCheck, HealthCheckReport>
    */
   @Override
   protected HealthCheckReport derivePageComponent(HealthCheck check) {
-    return check.performDerivation();
+    long start = System.nanoTime();
+    HealthCheckReport report = check.performDerivation();
+    long elapsed = System.nanoTime() - start;
+    HealthHistoryStore store = getHistoryStore();
+    if (store != null) {
+      try {
+        store.append(getName(), namePageComponent(check), report.getResult(),
+            elapsed);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Cannot record the outcome of " + check, e);
+      }
+    }
+    return report;
+  }
+
+  /**
+   * @return the store of the outcomes of the checks that survives restarts,
+   * or null if there is none, such as when Jenkins is not running.
+   */
+  @Nullable
+  private static HealthHistoryStore getHistoryStore() {
+    Jenkins jenkins = Jenkins.getInstance();
+    if (jenkins == null) {
+      return null;
+    }
+    HealthCheckManager manager = jenkins.getExtensionList(
+        HealthCheckManager.class).get(HealthCheckManager.class);
+    return manager == null ? null : manager.getHistoryStore();
   }
 
   /**
-   * @return the result combined from individual {@link HealthCheck} results.
+   * @return the result combined from individual {@link HealthCheck} results,
+   * as of the latest snapshot of this zone.  The log of the failing checks is
+   * only rendered when the report's value is read, once per snapshot.
    */
   public HealthCheckReport getCombinedReport() {
-    Result combined = Result.SUCCESS;
-    StringBuilder log = new StringBuilder();
-    for (Map.Entry<String, HealthCheckReport> entry : getReports().entrySet()) {
-      String check = entry.getKey();
-      HealthCheckReport report = entry.getValue();
-      combined = combined.combine(report.getResult());
-      if (report.getResult().isWorseThan(Result.SUCCESS)) {
-        log.append(String.format(
-            "[%s]: '%s' due to:%n%s%n", report.getResult(), check,
-            report.getValue()));
+    DerivedPageSnapshot<HealthCheckReport> snapshot = getSnapshot();
+    CombinedReport current = combinedReport;
+    if (current == null || current.snapshot != snapshot) {
+      current = new CombinedReport(snapshot);
+      combinedReport = current;
+    }
+    return current;
+  }
+  private transient volatile CombinedReport combinedReport;
+
+  /**
+   * A {@link HealthCheckReport} of the combined result of a snapshot, whose
+   * value lists the failing checks and their logs.
+   */
+  @VisibleForTesting
+  static final class CombinedReport extends HealthCheckReport {
+    private final DerivedPageSnapshot<HealthCheckReport> snapshot;
+    private volatile String rendered;
+
+    CombinedReport(DerivedPageSnapshot<HealthCheckReport> snapshot) {
+      super(snapshot.getCombinedResult());
+      this.snapshot = snapshot;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getValue() {
+      String value = rendered;
+      if (value == null) {
+        // Rendering twice in a race gives the same text, so no locking.
+        value = render();
+        rendered = value;
+      }
+      return value;
+    }
+
+    @VisibleForTesting boolean isRendered() {
+      return rendered != null;
+    }
+
+    private String render() {
+      StringBuilder log = new StringBuilder();
+      for (Map.Entry<String, HealthCheckReport> entry
+               : snapshot.getReports().entrySet()) {
+        String check = entry.getKey();
+        HealthCheckReport report = entry.getValue();
+        if (report != null
+            && report.getResult().isWorseThan(Result.SUCCESS)) {
+          log.append(String.format(
+              "[%s]: '%s' due to:%n%s%n", report.getResult(), check,
+              report.getValue()));
+        }
       }
+      return log.toString();
     }
-    return new HealthCheckReport(combined, log.toString());
   }
 
+  /**
+   * @return the result combined from individual {@link HealthCheck} results,
+   * without rendering their logs.
+   */
   public Result getCombinedResult() {
-    return getCombinedReport().getResult();
+    return getSnapshot().getCombinedResult();
+  }
+
+  /**
+   * @return the latest evaluations of each check of this zone, as recorded
+   * so far.  Nothing is evaluated to produce it.
+   */
+  public ZoneHistory getHistory() {
+    return new ZoneHistory(this);
+  }
+
+  /**
+   * @return the availability of this zone over the last hour, day and 30
+   * days as of now, from counters kept up to date as it is evaluated.
+   */
+  @Exported
+  public List<HealthZoneAvailability.Window> getAvailability() {
+    return getAvailabilityCounters().getWindows();
+  }
+
+  private HealthZoneAvailability getAvailabilityCounters() {
+    HealthZoneAvailability counters = availability;
+    if (counters == null) {
+      synchronized (this) {
+        counters = availability;
+        if (counters == null) {
+          counters = new HealthZoneAvailability();
+          availability = counters;
+        }
+      }
+    }
+    return counters;
+  }
+  private transient volatile HealthZoneAvailability availability;
+
+  /** {@inheritDoc} */
+  @Override
+  protected void published(DerivedPageSnapshot<HealthCheckReport> snapshot) {
+    getAvailabilityCounters().record(snapshot.getTimestamp(),
+        snapshot.getCombinedResult());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void writeJsonProperties(DerivedPageJsonWriter json)
+      throws IOException {
+    super.writeJsonProperties(json);
+    json.name("availability").beginArray();
+    for (HealthZoneAvailability.Window window : getAvailability()) {
+      window.writeJson(json);
+    }
+    json.endArray();
+  }
+
+  /**
+   * The response bodies of {@link #doStatus}, encoded once up front.
+   */
+  private static final Map<Result, byte[]> STATUS_BODIES;
+  static {
+    ImmutableMap.Builder<Result, byte[]> bodies = ImmutableMap.builder();
+    for (Result result : new Result[] {Result.SUCCESS, Result.UNSTABLE,
+        Result.FAILURE, Result.NOT_BUILT, Result.ABORTED}) {
+      bodies.put(result, (result + "\n").getBytes(Charsets.UTF_8));
+    }
+    STATUS_BODIES = bodies.build();
+  }
+
+  /**
+   * A minimal endpoint for load balancer probes: answers 200 if the latest
+   * snapshot of this zone is successful and 503 otherwise, with the combined
+   * result as the only content.  Unlike {@link #getApi()}, nothing is
+   * exported or formatted per request.
+   */
+  public void doStatus(StaplerRequest req, StaplerResponse rsp)
+      throws IOException {
+    Result result = getCombinedResult();
+    byte[] body = STATUS_BODIES.get(result);
+    rsp.setStatus(result.isBetterOrEqualTo(Result.SUCCESS)
+        ? StaplerResponse.SC_OK : StaplerResponse.SC_SERVICE_UNAVAILABLE);
+    rsp.setHeader("Cache-Control", "no-cache");
+    rsp.setContentType("text/plain;charset=UTF-8");
+    rsp.setContentLength(body.length);
+    ServletOutputStream out = rsp.getOutputStream();
+    out.write(body);
+    out.flush();
   }
 
   /**
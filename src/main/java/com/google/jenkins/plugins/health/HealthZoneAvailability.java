@@ -0,0 +1,321 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import com.google.common.collect.ImmutableList;
+import com.google.jenkins.plugins.health.lib.DerivedPageJsonWriter;
+
+import hudson.model.Result;
+
+/**
+ * The availability of a {@link HealthZone} over sliding windows of the last
+ * hour, day and 30 days: how many of its evaluations succeeded, and how long
+ * it spent failing.
+ *
+ * Each window keeps counters in a ring of fixed-width time buckets, along
+ * with their running totals.  Recording adds to the current bucket, and
+ * buckets falling out of the window are subtracted from the totals as time
+ * advances, so neither recording nor reading rescans anything.
+ */
+public final class HealthZoneAvailability {
+  /**
+   * The windows availability is computed over.
+   */
+  public enum Period {
+    HOUR(TimeUnit.HOURS.toMillis(1), 60),
+    DAY(TimeUnit.DAYS.toMillis(1), 96),
+    MONTH(TimeUnit.DAYS.toMillis(30), 720);
+
+    private final long millis;
+    private final int buckets;
+
+    Period(long millis, int buckets) {
+      this.millis = millis;
+      this.buckets = buckets;
+    }
+
+    /**
+     * @return the length of the window, in milliseconds.
+     */
+    public long getMillis() {
+      return millis;
+    }
+  }
+
+  /**
+   * The width of the narrowest buckets, of the {@link Period#HOUR} window:
+   * one minute.
+   */
+  public static final long RESOLUTION_MILLIS =
+      Period.HOUR.millis / Period.HOUR.buckets;
+
+  private final Counters[] counters;
+  /** When the zone was last evaluated.  Guarded by {@code this}. */
+  private long lastTimestamp;
+  /** Whether it was failing then.  Guarded by {@code this}. */
+  private boolean lastFailing;
+
+  public HealthZoneAvailability() {
+    Period[] periods = Period.values();
+    this.counters = new Counters[periods.length];
+    for (int i = 0; i < periods.length; i++) {
+      counters[i] = new Counters(periods[i]);
+    }
+  }
+
+  /**
+   * Record an evaluation of the zone.  The time since the previous one is
+   * counted as failing if that one failed.
+   *
+   * @param timestamp when the evaluation finished, in milliseconds since the
+   * epoch.
+   * @param result the combined result of the evaluation.
+   */
+  public synchronized void record(long timestamp, Result result) {
+    boolean success = result.isBetterOrEqualTo(Result.SUCCESS);
+    long from = lastTimestamp == 0 ? timestamp : lastTimestamp;
+    // Never count time twice if the clock went back.
+    long to = Math.max(timestamp, from);
+    for (Counters window : counters) {
+      window.advance(to);
+      window.addTime(from, to, lastFailing);
+      window.addEvaluation(to, success);
+    }
+    lastTimestamp = to;
+    lastFailing = !success;
+  }
+
+  /**
+   * @return the availability over each {@link Period}, as of now, so that
+   * evaluations age out of the windows even once the zone is no longer
+   * evaluated.
+   */
+  public List<Window> getWindows() {
+    return getWindows(System.currentTimeMillis());
+  }
+
+  synchronized List<Window> getWindows(long now) {
+    now = Math.max(now, lastTimestamp);
+    ImmutableList.Builder<Window> windows = ImmutableList.builder();
+    for (Counters window : counters) {
+      window.advance(now);
+      // Count the time since the last evaluation as the state it left.
+      long ongoing = lastTimestamp == 0
+          ? 0 : Math.min(now - lastTimestamp, window.period.millis);
+      windows.add(new Window(window.period, window.totalEvaluations,
+          window.totalSuccesses,
+          Math.min(window.period.millis, window.totalObserved + ongoing),
+          Math.min(window.period.millis,
+              window.totalFailing + (lastFailing ? ongoing : 0))));
+    }
+    return windows.build();
+  }
+
+  /**
+   * The bucketed counters of one window.  Guarded by the
+   * {@link HealthZoneAvailability}.
+   */
+  private static final class Counters {
+    private final Period period;
+    private final long bucketMillis;
+    private final long[] evaluations;
+    private final long[] successes;
+    private final long[] observed;
+    private final long[] failing;
+    /** The number of the newest bucket, counting from the epoch. */
+    private long newest = -1;
+
+    private long totalEvaluations;
+    private long totalSuccesses;
+    private long totalObserved;
+    private long totalFailing;
+
+    Counters(Period period) {
+      this.period = period;
+      this.bucketMillis = period.millis / period.buckets;
+      this.evaluations = new long[period.buckets];
+      this.successes = new long[period.buckets];
+      this.observed = new long[period.buckets];
+      this.failing = new long[period.buckets];
+    }
+
+    /**
+     * Make the bucket of the given time the newest one, emptying those that
+     * fall out of the window on the way.
+     */
+    void advance(long now) {
+      long bucket = now / bucketMillis;
+      if (newest < 0) {
+        newest = bucket;
+        return;
+      }
+      long stale = Math.min(bucket - newest, period.buckets);
+      for (long i = 1; i <= stale; i++) {
+        int slot = slotOf(newest + i);
+        totalEvaluations -= evaluations[slot];
+        totalSuccesses -= successes[slot];
+        totalObserved -= observed[slot];
+        totalFailing -= failing[slot];
+        evaluations[slot] = 0;
+        successes[slot] = 0;
+        observed[slot] = 0;
+        failing[slot] = 0;
+      }
+      newest = Math.max(newest, bucket);
+    }
+
+    void addEvaluation(long now, boolean success) {
+      int slot = slotOf(now / bucketMillis);
+      evaluations[slot]++;
+      totalEvaluations++;
+      if (success) {
+        successes[slot]++;
+        totalSuccesses++;
+      }
+    }
+
+    /**
+     * Spread a span of time over the buckets it covers that are still in
+     * the window.
+     */
+    void addTime(long from, long to, boolean wasFailing) {
+      long start = Math.max(from, (newest - period.buckets + 1) * bucketMillis);
+      while (start < to) {
+        long bucket = start / bucketMillis;
+        long end = Math.min(to, (bucket + 1) * bucketMillis);
+        int slot = slotOf(bucket);
+        observed[slot] += end - start;
+        totalObserved += end - start;
+        if (wasFailing) {
+          failing[slot] += end - start;
+          totalFailing += end - start;
+        }
+        start = end;
+      }
+    }
+
+    private int slotOf(long bucket) {
+      return (int) (bucket % period.buckets);
+    }
+  }
+
+  /**
+   * The availability of a zone over one {@link Period}, as of when it was
+   * read.
+   */
+  @ExportedBean(defaultVisibility = 2)
+  public static final class Window
+      implements DerivedPageJsonWriter.Exportable {
+    private final Period period;
+    private final long evaluations;
+    private final long successes;
+    private final long observedMillis;
+    private final long failingMillis;
+
+    Window(Period period, long evaluations, long successes,
+        long observedMillis, long failingMillis) {
+      this.period = period;
+      this.evaluations = evaluations;
+      this.successes = successes;
+      this.observedMillis = observedMillis;
+      this.failingMillis = failingMillis;
+    }
+
+    /**
+     * @return the window this is about.
+     */
+    @Exported
+    public Period getPeriod() {
+      return period;
+    }
+
+    /**
+     * @return how many times the zone was evaluated.
+     */
+    @Exported
+    public long getEvaluations() {
+      return evaluations;
+    }
+
+    /**
+     * @return how many of those evaluations succeeded.
+     */
+    @Exported
+    public long getSuccesses() {
+      return successes;
+    }
+
+    /**
+     * @return the fraction of evaluations that succeeded, or null if there
+     * was none.
+     */
+    @Exported @Nullable
+    public Double getSuccessRatio() {
+      return evaluations == 0 ? null : (double) successes / evaluations;
+    }
+
+    /**
+     * @return how long the zone was observed within the window, in
+     * milliseconds, which is less than the window until it was observed for
+     * that long.
+     */
+    @Exported
+    public long getObservedMillis() {
+      return observedMillis;
+    }
+
+    /**
+     * @return how long the zone spent failing, in milliseconds.
+     */
+    @Exported
+    public long getFailingMillis() {
+      return failingMillis;
+    }
+
+    /**
+     * @return the fraction of the observed time the zone was not failing,
+     * or null if it was not observed for any time yet.
+     */
+    @Exported @Nullable
+    public Double getUptime() {
+      return observedMillis == 0
+          ? null : 1 - (double) failingMillis / observedMillis;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeJson(DerivedPageJsonWriter json) throws IOException {
+      json.beginObject()
+          .name("period").value((Object) period)
+          .name("evaluations").value(evaluations)
+          .name("successes").value(successes)
+          .name("successRatio").value((Object) getSuccessRatio())
+          .name("observedMillis").value(observedMillis)
+          .name("failingMillis").value(failingMillis)
+          .name("uptime").value((Object) getUptime())
+          .endObject();
+    }
+  }
+}
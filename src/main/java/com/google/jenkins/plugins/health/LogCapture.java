@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import com.google.common.base.Charsets;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+/**
+ * The {@link TaskListener} a {@link HealthCheck} logs to, and the buffer
+ * capturing what it logs.
+ *
+ * Each thread keeps one around and reuses it from one evaluation to the
+ * next, so that a check that logs nothing allocates no listener, stream,
+ * encoder or buffer.  That is, unless the check has a timeout: it then
+ * still costs a task and a thread switch per evaluation, so only those with
+ * none, which is the default, evaluate without allocating.  A capture is
+ * only handed out again once released, and one that may still be written
+ * to, by a check that timed out, is never handed out again.  Neither is
+ * one whose buffers grew past {@link #RETAINED_LIMIT}, so that a thread does
+ * not hold on to a large log long after the evaluation that wrote it.
+ */
+final class LogCapture {
+  private static final ThreadLocal<LogCapture> POOLED =
+      new ThreadLocal<LogCapture>();
+
+  /**
+   * The number of bytes of buffers a thread keeps for reuse at most.
+   */
+  static final int RETAINED_LIMIT = 16 * 1024;
+
+  private final BoundedLogBuffer buffer = new BoundedLogBuffer(0);
+  private final StreamTaskListener listener =
+      new StreamTaskListener(buffer, Charsets.UTF_8);
+  private boolean inUse;
+
+  private LogCapture() {
+  }
+
+  /**
+   * @param limit the number of bytes of log to keep at most, zero for all.
+   * @return an empty capture, the one of the current thread unless it is
+   * already in use.
+   */
+  static LogCapture acquire(int limit) {
+    LogCapture capture = POOLED.get();
+    if (capture == null) {
+      capture = new LogCapture();
+      POOLED.set(capture);
+    } else if (capture.inUse) {
+      // A check evaluating another check.
+      capture = new LogCapture();
+    }
+    capture.inUse = true;
+    capture.buffer.reset(limit);
+    return capture;
+  }
+
+  /**
+   * @return the listener for the check to log to.
+   */
+  TaskListener getListener() {
+    return listener;
+  }
+
+  /**
+   * @return what was logged so far, the same empty string every time if
+   * nothing was.
+   */
+  String getLog() {
+    listener.getLogger().flush();
+    return buffer.isEmpty() ? "" : buffer.toString(Charsets.UTF_8);
+  }
+
+  /**
+   * Close the listener, such as once the check logging to it was given up
+   * on, so that it stops holding on to anything.
+   */
+  void close() {
+    listener.closeQuietly();
+  }
+
+  /**
+   * Give the capture back.
+   *
+   * @param reusable whether nothing may write to the listener anymore, so
+   * that the capture can be handed out again.
+   */
+  void release(boolean reusable) {
+    inUse = false;
+    if ((!reusable || buffer.getRetainedSize() > RETAINED_LIMIT)
+        && POOLED.get() == this) {
+      POOLED.remove();
+    }
+  }
+}
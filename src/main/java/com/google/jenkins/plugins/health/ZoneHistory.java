@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.jenkins.plugins.health.lib.DerivedPageJsonWriter;
+
+import hudson.model.Api;
+import hudson.model.ModelObject;
+import hudson.model.Result;
+
+/**
+ * The latest evaluations of each {@link HealthCheck} of a {@link HealthZone},
+ * served from "/health/zone/${zoneName}/history" and its remote access API.
+ */
+@ExportedBean
+public class ZoneHistory implements ModelObject {
+  private final HealthZone zone;
+  private final List<CheckHistory> checks;
+
+  /**
+   * @param zone the zone whose checks' history to show.
+   */
+  public ZoneHistory(HealthZone zone) {
+    this.zone = checkNotNull(zone);
+    ImmutableList.Builder<CheckHistory> checks = ImmutableList.builder();
+    for (HealthCheck check : zone.getComponents()) {
+      checks.add(new CheckHistory(zone.namePageComponent(check),
+          check.getStatistics().getHistory().getSamples()));
+    }
+    this.checks = checks.build();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getDisplayName() {
+    return Messages.ZoneHistory_DisplayName(zone.getName());
+  }
+
+  /**
+   * @return the zone whose checks' history this is.
+   */
+  public HealthZone getZone() {
+    return zone;
+  }
+
+  /**
+   * @return the history of each check, in the order they are configured.
+   */
+  @Exported(visibility = 2)
+  public List<CheckHistory> getChecks() {
+    return checks;
+  }
+
+  public Api getApi() { // for remote access API
+    return new Api(this);
+  }
+
+  /**
+   * The most records {@link #doRange} answers with at once.
+   */
+  public static final int MAX_RANGE_RECORDS = 10000;
+
+  /**
+   * Answer with the outcomes of the checks of this zone between two times,
+   * in milliseconds since the epoch, as persisted across restarts:
+   * <pre>
+   * {"records":[{"check":"...","timestamp":1,"result":"SUCCESS",
+   *   "latencyMicros":2}],"truncated":false}
+   * </pre>
+   * Without {@code from} or {@code to}, the range is open on that side.
+   * At most {@link #MAX_RANGE_RECORDS} records are returned, the oldest
+   * first, and {@code truncated} tells whether there were more.
+   */
+  public void doRange(StaplerRequest req, StaplerResponse rsp,
+      @QueryParameter String from, @QueryParameter String to)
+      throws IOException {
+    long since;
+    long until;
+    try {
+      since = (from == null || from.isEmpty()) ? 0 : Long.parseLong(from);
+      until = (to == null || to.isEmpty())
+          ? Long.MAX_VALUE : Long.parseLong(to);
+    } catch (NumberFormatException e) {
+      rsp.sendError(StaplerResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    rsp.setContentType("application/json;charset=UTF-8");
+    rsp.setHeader("Cache-Control", "no-cache");
+    DerivedPageJsonWriter json = new DerivedPageJsonWriter(rsp.getWriter());
+    json.beginObject().name("records").beginArray();
+    RangeWriter writer = new RangeWriter(json);
+    HealthHistoryStore store = zone.getHealthCheckManager().getHistoryStore();
+    if (store != null) {
+      store.scan(since, until, writer);
+      if (writer.failure != null) {
+        throw writer.failure;
+      }
+    }
+    json.endArray().name("truncated").value(writer.truncated).endObject();
+    json.flush();
+  }
+
+  /**
+   * Writes the records of this zone visited by a scan, up to
+   * {@link #MAX_RANGE_RECORDS}.
+   */
+  private final class RangeWriter implements HealthHistoryStore.Visitor {
+    private final DerivedPageJsonWriter json;
+    private int written;
+    private boolean truncated;
+    private IOException failure;
+
+    RangeWriter(DerivedPageJsonWriter json) {
+      this.json = json;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean visit(String zoneName, String check, long timestamp,
+        Result result, int latencyMicros) {
+      if (!zoneName.equals(zone.getName())) {
+        return true;
+      }
+      if (written == MAX_RANGE_RECORDS) {
+        truncated = true;
+        return false;
+      }
+      try {
+        json.beginObject()
+            .name("check").value(check)
+            .name("timestamp").value(timestamp)
+            .name("result").value((Object) result)
+            .name("latencyMicros").value(latencyMicros)
+            .endObject();
+      } catch (IOException e) {
+        failure = e;
+        return false;
+      }
+      written++;
+      return true;
+    }
+  }
+
+  /**
+   * The latest evaluations of a single {@link HealthCheck}, oldest first.
+   */
+  @ExportedBean(defaultVisibility = 2)
+  public static class CheckHistory {
+    private final String name;
+    private final HealthCheckHistory.Samples samples;
+
+    CheckHistory(String name, HealthCheckHistory.Samples samples) {
+      this.name = checkNotNull(name);
+      this.samples = checkNotNull(samples);
+    }
+
+    /**
+     * @return the name of the check, as in the zone's reports.
+     */
+    @Exported
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the evaluations, oldest first.
+     */
+    public HealthCheckHistory.Samples getSamples() {
+      return samples;
+    }
+
+    /**
+     * @return how many times the result changed between evaluations.
+     */
+    @Exported
+    public int getChanges() {
+      return samples.getChanges();
+    }
+
+    /**
+     * @return when each evaluation finished, in milliseconds since the
+     * epoch.
+     */
+    @Exported
+    public long[] getTimestamps() {
+      return samples.getTimestamps();
+    }
+
+    /**
+     * @return the result of each evaluation.
+     */
+    @Exported
+    public Result[] getResults() {
+      return samples.getResults();
+    }
+
+    /**
+     * @return how long each evaluation took, in microseconds.
+     */
+    @Exported
+    public int[] getLatencyMicros() {
+      return samples.getLatencyMicros();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+import javax.servlet.ServletException;
+
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Splitter;
+
+import hudson.model.Api;
+
+/**
+ * An implementation of {@link Api} that tags its responses with an ETag, and
+ * answers conditional requests for an unchanged bean with
+ * {@code 304 Not Modified} instead of exporting it again.
+ *
+ * Beans that are {@link DerivedPageJsonWriter.Exportable} are written to
+ * plain JSON requests directly, without reflection; requests that ask the
+ * reflective export for something specific, like a {@code tree}, a
+ * {@code depth} or a {@code jsonp} callback, are still served by it.
+ */
+public class ConditionalApi extends Api {
+  private static final Splitter TAGS = Splitter.on(',').trimResults();
+
+  /**
+   * The query parameters that only the reflective export understands.
+   */
+  private static final String[] EXPORT_PARAMETERS =
+      {"tree", "depth", "jsonp", "pretty", "xpath", "wrapper"};
+
+  private final String etag;
+
+  /**
+   * @param bean the object to export.
+   * @param generation a number that changes whenever what is exported does,
+   * such as {@link DerivedPageSnapshot#getGeneration()}.
+   */
+  public ConditionalApi(Object bean, long generation) {
+    this(bean, toETag(generation));
+  }
+
+  /**
+   * @param bean the object to export.
+   * @param etag the ETag of what is exported, as made by {@link #toETag}.
+   */
+  public ConditionalApi(Object bean, String etag) {
+    super(bean);
+    this.etag = checkNotNull(etag);
+  }
+
+  /**
+   * @return the ETag for the given generation.
+   */
+  public static String toETag(long generation) {
+    return "\"" + generation + "\"";
+  }
+
+  /**
+   * @return the ETag for the given generation of something that also has
+   * state of its own, which changes with the given revision.
+   */
+  public static String toETag(long generation, long revision) {
+    return "\"" + generation + "." + revision + "\"";
+  }
+
+  /**
+   * @return the ETag of the exported bean.
+   */
+  public String getETag() {
+    return etag;
+  }
+
+  /**
+   * Tag the response, and tell whether the client already has it.
+   *
+   * @return true if a {@code 304 Not Modified} was sent, and there is nothing
+   * more to do.
+   */
+  private boolean notModified(StaplerRequest req, StaplerResponse rsp) {
+    rsp.setHeader("ETag", etag);
+    if (matches(req.getHeader("If-None-Match"))) {
+      rsp.setStatus(StaplerResponse.SC_NOT_MODIFIED);
+      return true;
+    }
+    return false;
+  }
+
+  private boolean matches(@Nullable String ifNoneMatch) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : TAGS.split(ifNoneMatch)) {
+      // Weak comparison, as for any GET.
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isPlain(StaplerRequest req) {
+    for (String parameter : EXPORT_PARAMETERS) {
+      if (req.getParameter(parameter) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void doXml(StaplerRequest req, StaplerResponse rsp,
+      @QueryParameter String xpath,
+      @QueryParameter String wrapper,
+      @QueryParameter String tree,
+      @QueryParameter int depth) throws IOException, ServletException {
+    if (!notModified(req, rsp)) {
+      super.doXml(req, rsp, xpath, wrapper, tree, depth);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void doJson(StaplerRequest req, StaplerResponse rsp)
+      throws IOException, ServletException {
+    if (notModified(req, rsp)) {
+      return;
+    }
+    if (bean instanceof DerivedPageJsonWriter.Exportable && isPlain(req)) {
+      rsp.setContentType("application/json;charset=UTF-8");
+      DerivedPageJsonWriter json = new DerivedPageJsonWriter(rsp.getWriter());
+      ((DerivedPageJsonWriter.Exportable) bean).writeJson(json);
+      json.flush();
+    } else {
+      super.doJson(req, rsp);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void doPython(StaplerRequest req, StaplerResponse rsp)
+      throws IOException, ServletException {
+    if (!notModified(req, rsp)) {
+      super.doPython(req, rsp);
+    }
+  }
+}
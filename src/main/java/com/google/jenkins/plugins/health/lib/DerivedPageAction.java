@@ -15,16 +15,41 @@
  */
 package com.google.jenkins.plugins.health.lib;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerProxy;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.ExportedBean;
 
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import hudson.model.Api;
+import hudson.model.Result;
 import hudson.model.RootAction;
 import hudson.security.Permission;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 import jenkins.model.Jenkins;
 
@@ -75,14 +100,235 @@ public abstract class DerivedPageAction implements RootAction, StaplerProxy {
     if (permission != null) {
       Jenkins.getActiveInstance().checkPermission(permission);
     }
+    if (getDerivedPageManager().isStarting()) {
+      // Rather than answer that no zone exists while they are being loaded.
+      throw HttpResponses.error(StaplerResponse.SC_SERVICE_UNAVAILABLE,
+          "Starting: the configuration is still being loaded.");
+    }
     return this;
   }
 
   /**
-   * A default implementation of the remote access API.
+   * A default implementation of the remote access API, which answers
+   * conditional requests with {@code 304 Not Modified} until the zones or any
+   * of their snapshots change.
    */
   public Api getApi() {
-    return new Api(this);
+    return new ConditionalApi(this, getGeneration());
+  }
+
+  /**
+   * @return the largest generation among the configuration and the current
+   * snapshots of all zones, which grows whenever any of them changes.
+   */
+  private long getGeneration() {
+    long generation = getDerivedPageManager().getGeneration();
+    for (DerivedPageZone zone : getZones()) {
+      generation = Math.max(generation, zone.getSnapshot().getGeneration());
+    }
+    return generation;
+  }
+
+  /**
+   * How long {@link #doEvents} waits for a transition when not told, in
+   * seconds.
+   */
+  public static final int DEFAULT_EVENTS_TIMEOUT = 30;
+
+  /**
+   * The longest {@link #doEvents} may be asked to wait, in seconds.
+   */
+  public static final int MAX_EVENTS_TIMEOUT = 60;
+
+  /**
+   * A long-poll endpoint for clients that want to know when the result of a
+   * zone, or of one of its components, changes.  Answers with the
+   * transitions after the {@code after} sequence number as soon as there are
+   * any, or with none once {@code timeout} seconds elapsed:
+   * <pre>
+   * {"sequence":42,"gap":false,"transitions":[{"sequence":42,...}]}
+   * </pre>
+   * The client then asks again with {@code after} set to the returned
+   * {@code sequence}.  Without {@code after}, only future transitions are
+   * returned.  {@code gap} tells that some transitions after {@code after}
+   * were missed, as too many happened since, or {@code after} is from before
+   * Jenkins restarted; the client should then read the zones afresh.
+   */
+  public void doEvents(StaplerRequest req, StaplerResponse rsp,
+      @QueryParameter String after, @QueryParameter String timeout)
+      throws IOException {
+    DerivedPageTransitions transitions =
+        getDerivedPageManager().getTransitions();
+    long since;
+    int seconds;
+    try {
+      since = (after == null || after.isEmpty())
+          ? transitions.getSequence() : Long.parseLong(after);
+      seconds = (timeout == null || timeout.isEmpty())
+          ? DEFAULT_EVENTS_TIMEOUT : Integer.parseInt(timeout);
+    } catch (NumberFormatException e) {
+      rsp.sendError(StaplerResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    seconds = Math.max(0, Math.min(MAX_EVENTS_TIMEOUT, seconds));
+
+    DerivedPageTransitions.Events events;
+    try {
+      events = transitions.await(since, seconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException().initCause(e);
+    }
+
+    rsp.setContentType("application/json;charset=UTF-8");
+    rsp.setHeader("Cache-Control", "no-cache");
+    DerivedPageJsonWriter json = new DerivedPageJsonWriter(rsp.getWriter());
+    json.beginObject().name("sequence").value(events.getSequence())
+        .name("gap").value(events.isGap());
+    json.name("transitions").beginArray();
+    for (DerivedPageTransitions.Transition transition
+             : events.getTransitions()) {
+      transition.writeJson(json);
+    }
+    json.endArray().endObject();
+    json.flush();
+  }
+
+  private static final Splitter ZONE_NAMES =
+      Splitter.on(',').trimResults().omitEmptyStrings();
+
+  /**
+   * The most threads evaluating the zones of {@link #doBatch} requests at
+   * once, unless set otherwise with the system property of the same name as
+   * this class, followed by {@code .batchThreads}.  Zones beyond that wait
+   * for a thread to free up.
+   */
+  public static final int BATCH_THREADS = Math.max(1, Integer.getInteger(
+      DerivedPageAction.class.getName() + ".batchThreads", 8));
+
+  /**
+   * Evaluates the zones of a {@link #doBatch} request that have no snapshot
+   * to serve.  A zone may in turn wait for its components on the shared
+   * executor of {@link DerivedPageZone}, but never on another zone of this
+   * one, so a zone waiting for a thread here cannot hold up the ones running.
+   */
+  private static ExecutorService batchExecutor;
+
+  private static synchronized ExecutorService getBatchExecutor() {
+    if (batchExecutor == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(
+          BATCH_THREADS, BATCH_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new NamingThreadFactory(new DaemonThreadFactory(),
+              DerivedPageAction.class.getSimpleName()));
+      pool.allowCoreThreadTimeOut(true);
+      batchExecutor = pool;
+    }
+    return batchExecutor;
+  }
+
+  /**
+   * Stop the threads evaluating the zones of {@link #doBatch} requests.
+   */
+  static synchronized void shutdownBatchExecutor() {
+    if (batchExecutor != null) {
+      batchExecutor.shutdownNow();
+      batchExecutor = null;
+    }
+  }
+
+  /**
+   * Answer for several zones at once, with a single permission check:
+   * <pre>
+   * {"result":"FAILURE","zones":{"a":{"result":"SUCCESS","reports":{...}},
+   *     "b":{"result":"FAILURE","reports":{...}},"unknown":null}}
+   * </pre>
+   * The top-level result combines those of the zones found.  Zones that
+   * need evaluating, because they have no snapshot yet or are evaluated on
+   * every read, are evaluated concurrently.
+   *
+   * @param zones the comma-separated names of the zones.
+   */
+  public void doBatch(StaplerRequest req, StaplerResponse rsp,
+      @QueryParameter String zones) throws IOException {
+    Map<String, DerivedPageSnapshot<?>> snapshots =
+        getSnapshots(zones == null ? "" : zones);
+    Result combined = Result.SUCCESS;
+    for (DerivedPageSnapshot<?> snapshot : snapshots.values()) {
+      if (snapshot != null) {
+        combined = combined.combine(snapshot.getCombinedResult());
+      }
+    }
+
+    rsp.setContentType("application/json;charset=UTF-8");
+    DerivedPageJsonWriter json = new DerivedPageJsonWriter(rsp.getWriter());
+    json.beginObject().name("result").value(combined.toString());
+    json.name("zones").beginObject();
+    for (Map.Entry<String, DerivedPageSnapshot<?>> entry
+             : snapshots.entrySet()) {
+      json.name(entry.getKey());
+      DerivedPageSnapshot<?> snapshot = entry.getValue();
+      if (snapshot == null) {
+        json.nullValue();
+      } else {
+        json.beginObject()
+            .name("result").value(snapshot.getCombinedResult().toString())
+            .name("reports");
+        DerivedPageZone.writeReports(json, snapshot);
+        json.endObject();
+      }
+    }
+    json.endObject().endObject();
+    json.flush();
+  }
+
+  /**
+   * @return the snapshot of each named zone, null for names of no zone,
+   * evaluating those that need it concurrently.
+   */
+  private Map<String, DerivedPageSnapshot<?>> getSnapshots(String names) {
+    Map<String, Future<DerivedPageSnapshot<?>>> pending =
+        Maps.newLinkedHashMap();
+    final SecurityContext context = SecurityContextHolder.getContext();
+    for (String name : ZONE_NAMES.split(names)) {
+      if (pending.containsKey(name)) {
+        continue;
+      }
+      final DerivedPageZone<?, ?> zone = getZone(name);
+      if (zone == null) {
+        pending.put(name, Futures.<DerivedPageSnapshot<?>>immediateFuture(
+            null));
+      } else if (zone.getLatestSnapshot() != null
+          && zone.getRefreshInterval() > 0) {
+        pending.put(name, Futures.<DerivedPageSnapshot<?>>immediateFuture(
+            zone.getLatestSnapshot()));
+      } else {
+        pending.put(name, getBatchExecutor().submit(
+            new Callable<DerivedPageSnapshot<?>>() {
+              @Override
+              public DerivedPageSnapshot<?> call() {
+                SecurityContext previous = SecurityContextHolder.getContext();
+                SecurityContextHolder.setContext(context);
+                try {
+                  return zone.refresh();
+                } finally {
+                  SecurityContextHolder.setContext(previous);
+                }
+              }
+            }));
+      }
+    }
+
+    Map<String, DerivedPageSnapshot<?>> snapshots = Maps.newLinkedHashMap();
+    for (Map.Entry<String, Future<DerivedPageSnapshot<?>>> entry
+             : pending.entrySet()) {
+      try {
+        snapshots.put(entry.getKey(),
+            Uninterruptibles.getUninterruptibly(entry.getValue()));
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+    return snapshots;
   }
 
   /**
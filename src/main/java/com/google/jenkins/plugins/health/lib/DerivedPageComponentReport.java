@@ -15,11 +15,15 @@
  */
 package com.google.jenkins.plugins.health.lib;
 
+import java.io.IOException;
+
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Objects;
+
 import hudson.model.Result;
 
 /**
@@ -28,7 +32,8 @@ import hudson.model.Result;
  * if it is successfully produced.
  */
 @ExportedBean
-public class DerivedPageComponentReport<Value> {
+public class DerivedPageComponentReport<Value>
+    implements DerivedPageJsonWriter.Exportable {
   private final Result result;
   /**
    * @return the {@link Result} of for executing the logic to obtaining the
@@ -61,4 +66,66 @@ public class DerivedPageComponentReport<Value> {
     this.result = checkNotNull(result);
     this.value = checkNotNull(value);
   }
+
+  /**
+   * For subclasses that override {@link #getValue()} to derive the value
+   * only when it is read.
+   *
+   * @param result {@link Result} indicating if derivation of value is
+   * successful.
+   */
+  protected DerivedPageComponentReport(Result result) {
+    this.result = checkNotNull(result);
+    this.value = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Reports are equal if they are of the same type and carry equal results
+   * and values, so that an evaluation can tell whether anything changed since
+   * the previous one.
+   */
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || other.getClass() != getClass()) {
+      return false;
+    }
+    DerivedPageComponentReport<?> that = (DerivedPageComponentReport<?>) other;
+    return result == that.result
+        && Objects.equal(getValue(), that.getValue());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(result, getValue());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Writes the same properties as the remote access API exports, in the same
+   * order.
+   */
+  @Override
+  public void writeJson(DerivedPageJsonWriter json) throws IOException {
+    json.beginObject();
+    writeJsonProperties(json);
+    json.endObject();
+  }
+
+  /**
+   * Write the exported properties of this report as members of the enclosing
+   * JSON object.  Subclasses exporting more properties should add them after
+   * calling this.
+   */
+  protected void writeJsonProperties(DerivedPageJsonWriter json)
+      throws IOException {
+    json.name("result").value(result.toString());
+    json.name("value").value(getValue());
+  }
 }
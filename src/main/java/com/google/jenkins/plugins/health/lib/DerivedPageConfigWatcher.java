@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Notices when a configuration file is changed by something other than
+ * Jenkins, such as configuration management, and has it reloaded.
+ *
+ * The file's modification time and length are checked every
+ * {@link #POLL_SECONDS} seconds, which costs a single stat call.  A change
+ * is only acted upon once the file has stayed the same for a whole period,
+ * so that a burst of writes causes a single reload, of the complete file.
+ */
+final class DerivedPageConfigWatcher {
+  private static final Logger LOGGER =
+      Logger.getLogger(DerivedPageConfigWatcher.class.getName());
+
+  /**
+   * How often the file is checked, in seconds, unless set otherwise with the
+   * system property of the same name as this class, followed by
+   * {@code .pollSeconds}.
+   */
+  static final int POLL_SECONDS = Math.max(1, Integer.getInteger(
+      DerivedPageConfigWatcher.class.getName() + ".pollSeconds", 5));
+
+  private static ScheduledExecutorService executor;
+
+  private static synchronized ScheduledExecutorService getExecutor() {
+    if (executor == null) {
+      executor = new ScheduledThreadPoolExecutor(1,
+          new NamingThreadFactory(new DaemonThreadFactory(),
+              DerivedPageConfigWatcher.class.getSimpleName()));
+    }
+    return executor;
+  }
+
+  /**
+   * Stop the thread shared by all watchers.  Watchers started afterwards get
+   * a new one.
+   */
+  static synchronized void shutdownExecutor() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private final File file;
+  private final Runnable reload;
+
+  /**
+   * The state of the file as last loaded or saved.  Guarded by
+   * {@code this}.
+   */
+  @Nullable private Stamp applied;
+  /**
+   * A state of the file seen since, not stable yet.  Guarded by
+   * {@code this}.
+   */
+  @Nullable private Stamp pending;
+  /** Guarded by {@code this}. */
+  @Nullable private ScheduledFuture<?> future;
+
+  /**
+   * @param file the configuration file to watch.
+   * @param reload what to run, once the file has changed.
+   */
+  DerivedPageConfigWatcher(File file, Runnable reload) {
+    this.file = checkNotNull(file);
+    this.reload = checkNotNull(reload);
+  }
+
+  /**
+   * Start checking the file periodically, taking its current state as
+   * already loaded.
+   */
+  synchronized void start() {
+    if (future != null) {
+      return;
+    }
+    acknowledge();
+    future = getExecutor().scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          poll();
+        } catch (RuntimeException e) {
+          // Swallow, otherwise the executor silently stops rescheduling us.
+          LOGGER.log(Level.WARNING, "Failed to reload " + file, e);
+        }
+      }
+    }, POLL_SECONDS, POLL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop checking the file.
+   */
+  synchronized void stop() {
+    if (future != null) {
+      future.cancel(false);
+      future = null;
+    }
+  }
+
+  /**
+   * @return whether the file is being checked periodically.
+   */
+  @VisibleForTesting
+  synchronized boolean isStarted() {
+    return future != null;
+  }
+
+  /**
+   * Take the current state of the file as loaded, such as right after
+   * Jenkins saved it, so that it is not reloaded for that.
+   */
+  synchronized void acknowledge() {
+    applied = Stamp.of(file);
+    pending = null;
+  }
+
+  /**
+   * Check the file once, and reload it if it changed and then stayed the
+   * same since the previous check.
+   */
+  @VisibleForTesting
+  void poll() {
+    Stamp current = Stamp.of(file);
+    synchronized (this) {
+      if (current.equals(applied)) {
+        pending = null;
+        return;
+      }
+      if (!current.equals(pending)) {
+        // Changed since the last check, so it may still be being written.
+        pending = current;
+        return;
+      }
+      applied = current;
+      pending = null;
+    }
+    if (current.exists) {
+      reload.run();
+    }
+  }
+
+  /**
+   * What tells one version of the file from another, short of reading it.
+   */
+  private static final class Stamp {
+    private final boolean exists;
+    private final long lastModified;
+    private final long length;
+
+    private Stamp(boolean exists, long lastModified, long length) {
+      this.exists = exists;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    static Stamp of(File file) {
+      return new Stamp(file.exists(), file.lastModified(), file.length());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Stamp)) {
+        return false;
+      }
+      Stamp other = (Stamp) o;
+      return exists == other.exists && lastModified == other.lastModified
+          && length == other.length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+      return (int) (lastModified ^ length) + (exists ? 1 : 0);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.BitSet;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A minimal JSON writer that emits derived pages straight to the response,
+ * one token at a time.
+ *
+ * Unlike the reflective export of the remote access API, nothing is buffered
+ * beyond the underlying {@link Writer}, so the memory needed to serve a zone
+ * does not grow with the number or size of its reports.
+ */
+public final class DerivedPageJsonWriter {
+  /**
+   * Something that knows how to write itself as JSON, in the same shape as
+   * it is exported by the remote access API.
+   */
+  public interface Exportable {
+    /**
+     * @param json the writer to emit a single JSON value to.
+     */
+    void writeJson(DerivedPageJsonWriter json) throws IOException;
+  }
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer out;
+  /**
+   * Whether the object or array at each level of nesting already has a
+   * member, so that the next one needs a comma.
+   */
+  private final BitSet started = new BitSet();
+  private int depth;
+  /** Whether a name was just written, and its value is expected next. */
+  private boolean named;
+
+  /**
+   * @param out where to write the JSON to.
+   */
+  public DerivedPageJsonWriter(Writer out) {
+    this.out = checkNotNull(out);
+  }
+
+  /** Start a JSON object. */
+  public DerivedPageJsonWriter beginObject() throws IOException {
+    return open('{');
+  }
+
+  /** End the innermost JSON object. */
+  public DerivedPageJsonWriter endObject() throws IOException {
+    return close('}');
+  }
+
+  /** Start a JSON array. */
+  public DerivedPageJsonWriter beginArray() throws IOException {
+    return open('[');
+  }
+
+  /** End the innermost JSON array. */
+  public DerivedPageJsonWriter endArray() throws IOException {
+    return close(']');
+  }
+
+  /**
+   * Write the name of the next member of the current object.
+   */
+  public DerivedPageJsonWriter name(String name) throws IOException {
+    checkState(depth > 0 && !named, "Not expecting a name");
+    separate();
+    string(name);
+    out.write(':');
+    named = true;
+    return this;
+  }
+
+  /**
+   * Write a string, or null.
+   */
+  public DerivedPageJsonWriter value(@Nullable String value)
+      throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    string(value);
+    return this;
+  }
+
+  /** Write a boolean. */
+  public DerivedPageJsonWriter value(boolean value) throws IOException {
+    beforeValue();
+    out.write(value ? "true" : "false");
+    return this;
+  }
+
+  /** Write a number. */
+  public DerivedPageJsonWriter value(long value) throws IOException {
+    beforeValue();
+    out.write(Long.toString(value));
+    return this;
+  }
+
+  /**
+   * Write an arbitrary value: booleans and finite numbers as such, anything
+   * else as its string form.
+   */
+  public DerivedPageJsonWriter value(@Nullable Object value)
+      throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    if (value instanceof Boolean) {
+      return value(((Boolean) value).booleanValue());
+    }
+    if (value instanceof Number && isFinite((Number) value)) {
+      beforeValue();
+      out.write(value.toString());
+      return this;
+    }
+    return value(value.toString());
+  }
+
+  /** Write null. */
+  public DerivedPageJsonWriter nullValue() throws IOException {
+    beforeValue();
+    out.write("null");
+    return this;
+  }
+
+  /**
+   * Flush the underlying {@link Writer}.
+   */
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private static boolean isFinite(Number number) {
+    double asDouble = number.doubleValue();
+    return !Double.isNaN(asDouble) && !Double.isInfinite(asDouble);
+  }
+
+  private DerivedPageJsonWriter open(char bracket) throws IOException {
+    beforeValue();
+    out.write(bracket);
+    started.clear(++depth);
+    return this;
+  }
+
+  private DerivedPageJsonWriter close(char bracket) throws IOException {
+    checkState(depth > 0 && !named, "Nothing to close");
+    out.write(bracket);
+    depth--;
+    return this;
+  }
+
+  private void beforeValue() throws IOException {
+    if (named) {
+      named = false;
+    } else {
+      separate();
+    }
+  }
+
+  private void separate() throws IOException {
+    if (depth > 0) {
+      if (started.get(depth)) {
+        out.write(',');
+      } else {
+        started.set(depth);
+      }
+    }
+  }
+
+  /**
+   * Write a quoted string, copying runs of characters that need no escaping
+   * in one go.
+   */
+  private void string(String value) throws IOException {
+    out.write('"');
+    int length = value.length();
+    int run = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      String escape;
+      switch (c) {
+        case '"': escape = "\\\""; break;
+        case '\\': escape = "\\\\"; break;
+        case '\n': escape = "\\n"; break;
+        case '\r': escape = "\\r"; break;
+        case '\t': escape = "\\t"; break;
+        case '\b': escape = "\\b"; break;
+        case '\f': escape = "\\f"; break;
+        default:
+          if (c >= 0x20 && c != '\u2028' && c != '\u2029') {
+            continue;
+          }
+          escape = null;
+      }
+      out.write(value, run, i - run);
+      run = i + 1;
+      if (escape != null) {
+        out.write(escape);
+      } else {
+        out.write("\\u");
+        out.write(HEX[(c >> 12) & 0xf]);
+        out.write(HEX[(c >> 8) & 0xf]);
+        out.write(HEX[(c >> 4) & 0xf]);
+        out.write(HEX[c & 0xf]);
+      }
+    }
+    out.write(value, run, length - run);
+    out.write('"');
+  }
+}
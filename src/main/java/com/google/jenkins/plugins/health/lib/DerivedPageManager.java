@@ -18,8 +18,11 @@ package com.google.jenkins.plugins.health.lib;
 import java.io.File;
 import java.io.IOException;
 
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 import javax.servlet.ServletException;
@@ -29,13 +32,17 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import hudson.XmlFile;
 import hudson.model.Hudson;
 import hudson.model.ManagementLink;
 import hudson.model.Saveable;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.HttpResponses;
+import hudson.util.NamingThreadFactory;
 
 import jenkins.model.Jenkins;
 
@@ -53,32 +60,219 @@ import net.sf.json.JSONObject;
  */
 public abstract class DerivedPageManager<Zone extends DerivedPageZone>
     extends ManagementLink implements Saveable {
+  private static final Logger LOGGER =
+      Logger.getLogger(DerivedPageManager.class.getName());
+
   /**
-   * The configured {@link Zone}s.
+   * The configured {@link Zone}s, in the form they are persisted.  Replaced
+   * as a whole on every change and never modified in place.
    */
-  private final Map<String, Zone> derivedPages;
+  private volatile Map<String, Zone> derivedPages;
   private final Class<Zone> type;
 
   /**
-   * Load an instance of {@link DerivedPageManager} from Jenkins configuration
-   * from disk if the configuration file (by {@link #getConfigFile()}) exists.
-   *
-   * Otherwise create a new instance.
+   * The configured {@link Zone}s, as read by request threads, or null until
+   * the configuration file is loaded.
+   */
+  @Nullable private transient volatile Registry<Zone> registry;
+
+  /**
+   * Whether the configuration file is being loaded in the background.
+   */
+  private transient volatile boolean loading;
+
+  /**
+   * Why the configuration file could not be loaded, if it could not, until
+   * a configuration is loaded from it after all.  Meanwhile, the file is
+   * never overwritten, as what it holds is not what is shown.
+   */
+  @Nullable private transient volatile IOException loadFailure;
+
+  /**
+   * What readers see while the configuration file is loaded in the
+   * background: no zones at all.
+   */
+  private final transient Registry<Zone> starting =
+      new Registry<Zone>(ImmutableList.<Zone>of());
+
+  /**
+   * Reloads the configuration file when it changes, once asked to by
+   * {@link #watchConfigFile()}.
+   */
+  @Nullable private transient volatile DerivedPageConfigWatcher watcher;
+
+  /**
+   * Whether {@link #shutdown()} was called, after which nothing is refreshed
+   * or watched in the background anymore.  Guarded by {@code this}.
+   */
+  private transient boolean shutDown;
+
+  /**
+   * Keeps the snapshots of the configured {@link Zone}s fresh.
+   */
+  private final transient DerivedPageScheduler scheduler =
+      new DerivedPageScheduler();
+
+  /**
+   * Where the configured {@link Zone}s record changes in their results.
+   */
+  private final transient DerivedPageTransitions transitions =
+      new DerivedPageTransitions();
+
+  /**
+   * Create an instance of {@link DerivedPageManager}, whose configuration is
+   * loaded from disk (by {@link #getConfigFile()}) by {@link #load()}, or by
+   * {@link #loadInBackground()}, so that nothing is read while extensions are
+   * instantiated.  Without either, it is loaded on first access.
    */
   public DerivedPageManager(Class<Zone> type) throws IOException {
     this.derivedPages = Maps.newHashMap();
-    XmlFile xml = getConfigFile();
-    if (xml.exists()) {
-      xml.unmarshal(this);
-    }
     this.type = type;
   }
 
+  /**
+   * Load the configuration from disk if the configuration file exists, and
+   * start refreshing its zones.  Does nothing if it was already loaded, or
+   * if zones were set since.
+   */
+  public final synchronized void load() {
+    try {
+      if (registry != null) {
+        return;
+      }
+      XmlFile xml = getConfigFile();
+      if (xml.exists()) {
+        try {
+          xml.unmarshal(this);
+        } catch (IOException e) {
+          LOGGER.log(Level.SEVERE, "Cannot load " + xml, e);
+          loadFailure = e;
+        }
+      }
+      publish(new Registry<Zone>(derivedPages.values()));
+    } finally {
+      loading = false;
+    }
+  }
+
+  /**
+   * Start loading the configuration on a thread of its own, and answer
+   * readers as if there were no zones until it is loaded.
+   */
+  public final synchronized void loadInBackground() {
+    if (registry != null || loading) {
+      return;
+    }
+    loading = true;
+    new NamingThreadFactory(new DaemonThreadFactory(),
+        getClass().getSimpleName() + " loader").newThread(new Runnable() {
+          @Override
+          public void run() {
+            load();
+          }
+        }).start();
+  }
+
+  /**
+   * @return whether the configuration is still being loaded, during which
+   * no zone is known.
+   */
+  public boolean isStarting() {
+    return registry == null && loading;
+  }
+
+  /**
+   * @return the configured {@link Zone}s, loading them first if nobody did.
+   */
+  private Registry<Zone> getRegistry() {
+    Registry<Zone> current = registry;
+    if (current != null) {
+      return current;
+    }
+    if (loading) {
+      return starting;
+    }
+    load();
+    return registry;
+  }
+
+  /**
+   * @return why the configuration file could not be loaded, or null if it
+   * was, or there was none.
+   */
+  @Nullable public IOException getLoadFailure() {
+    return loadFailure;
+  }
+
+  /**
+   * @throws IOException if the configuration file could not be loaded and
+   * is still there, so that it is not overwritten with what little was.
+   */
+  private void checkLoaded() throws IOException {
+    IOException failure = loadFailure;
+    if (failure != null && getConfigFile().exists()) {
+      throw new IOException("Not overwriting " + getConfigFile()
+          + ", which failed to load; fix or remove it first", failure);
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void save() throws IOException {
     Jenkins.getActiveInstance().checkPermission(Jenkins.ADMINISTER);
+    checkLoaded();
     getConfigFile().write(this);
+    DerivedPageConfigWatcher current = watcher;
+    if (current != null) {
+      current.acknowledge();
+    }
+  }
+
+  /**
+   * Reload the configuration file whenever it is changed by something other
+   * than Jenkins, from now on.
+   */
+  public final synchronized void watchConfigFile() {
+    if (watcher == null && !shutDown) {
+      watcher = new DerivedPageConfigWatcher(getConfigFile().getFile(),
+          new Runnable() {
+            @Override
+            public void run() {
+              reload();
+            }
+          });
+      watcher.start();
+    }
+  }
+
+  /**
+   * Read the configuration file again and swap in its zones, keeping those
+   * and the components that did not change as they are.  If the file cannot
+   * be read, the current configuration stays in place.  Once it can, it may
+   * be saved over again even if it failed to load before.
+   */
+  public final synchronized void reload() {
+    XmlFile xml = getConfigFile();
+    Object read;
+    try {
+      read = xml.read();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING,
+          "Keeping the current configuration, failed to load " + xml, e);
+      return;
+    }
+    if (!getClass().isInstance(read)) {
+      LOGGER.log(Level.WARNING,
+          "Keeping the current configuration, unexpected content in {0}", xml);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, Zone> loaded = ((DerivedPageManager<Zone>) read).derivedPages;
+    List<Zone> zones = loaded == null
+        ? ImmutableList.<Zone>of() : ImmutableList.copyOf(loaded.values());
+    setDerivedPages(reuseUnchanged(zones));
+    loadFailure = null;
+    LOGGER.log(Level.INFO, "Reloaded {0}", xml);
   }
 
   /**
@@ -106,7 +300,7 @@ public abstract class DerivedPageManager<Zone extends DerivedPageZone>
    * @return the list of {@link DerivedPageComponent} configured.
    */
   public List<Zone> getDerivedPages() {
-    return ImmutableList.copyOf(derivedPages.values());
+    return getRegistry().zones;
   }
 
   /**
@@ -114,15 +308,172 @@ public abstract class DerivedPageManager<Zone extends DerivedPageZone>
    * @return the {@link Zone} for the given name, null if none.
    */
   @Nullable public Zone getZone(String zoneName) {
-    return derivedPages.get(zoneName);
+    return getRegistry().byName.get(zoneName);
+  }
+
+  /**
+   * @return a number that changes whenever the configured {@link Zone}s do,
+   * drawn from the same increasing sequence as
+   * {@link DerivedPageSnapshot#getGeneration()}.
+   */
+  public long getGeneration() {
+    return getRegistry().generation;
+  }
+
+  /**
+   * Replace the configured {@link Zone}s.  Readers see either the previous
+   * zones or the new ones, never a mix of both or none at all.
+   */
+  @VisibleForTesting
+  protected synchronized void setDerivedPages(List<Zone> zones) {
+    Registry<Zone> fresh = new Registry<Zone>(zones);
+    this.derivedPages = Maps.newLinkedHashMap(fresh.byName);
+    publish(fresh);
+  }
+
+  private void publish(Registry<Zone> fresh) {
+    this.registry = fresh;
+    transitions.retain(fresh.byName.keySet());
+    watch(fresh.zones);
+    if (!shutDown) {
+      scheduler.schedule(fresh.zones);
+    }
+  }
+
+  /**
+   * Stop refreshing the configured {@link Zone}s and watching the
+   * configuration file, for good, such as when Jenkins shuts down.  Zones
+   * are still evaluated when read.
+   */
+  public final synchronized void shutdown() {
+    shutDown = true;
+    scheduler.cancel();
+    DerivedPageConfigWatcher current = watcher;
+    if (current != null) {
+      current.stop();
+    }
+  }
+
+  @VisibleForTesting
+  DerivedPageScheduler getScheduler() {
+    return scheduler;
+  }
+
+  @VisibleForTesting
+  @Nullable DerivedPageConfigWatcher getWatcher() {
+    return watcher;
+  }
+
+  /**
+   * Stop the threads shared by all managers, their zones and their actions,
+   * once every manager was {@link #shutdown()}.
+   */
+  public static void shutdownExecutors() {
+    DerivedPageScheduler.shutdownExecutor();
+    DerivedPageConfigWatcher.shutdownExecutor();
+    DerivedPageZone.shutdownParallelExecutor();
+    DerivedPageAction.shutdownBatchExecutor();
+  }
+
+  private void watch(List<Zone> zones) {
+    for (Zone zone : zones) {
+      zone.setTransitions(transitions);
+    }
+  }
+
+  /**
+   * @return the log of changes in the results of the configured
+   * {@link Zone}s.
+   */
+  public DerivedPageTransitions getTransitions() {
+    return transitions;
+  }
+
+  /**
+   * An immutable index of the configured {@link Zone}s, swapped as a whole
+   * so that readers never need to lock or copy.
+   */
+  private static final class Registry<Zone extends DerivedPageZone> {
+    private final ImmutableMap<String, Zone> byName;
+    private final ImmutableList<Zone> zones;
+    private final long generation = DerivedPageSnapshot.nextGeneration();
+
+    Registry(Iterable<Zone> zones) {
+      // As before, a later zone replaces an earlier one of the same name.
+      Map<String, Zone> byName = Maps.newLinkedHashMap();
+      for (Zone zone : zones) {
+        byName.put(zone.getName(), zone);
+      }
+      this.byName = ImmutableMap.copyOf(byName);
+      this.zones = ImmutableList.copyOf(this.byName.values());
+    }
   }
 
+  /**
+   * Match freshly bound zones against the configured ones, so that only what
+   * was actually changed starts cold.  A zone configured exactly as before
+   * is replaced by the existing instance, with its snapshot, history and
+   * schedule.  In a zone that changed, such as one that was only renamed,
+   * each component configured exactly as an existing one is replaced by
+   * that instance, with its cached state.
+   *
+   * Configurations are compared in their persisted form, which leaves out
+   * transient state.  The caller holds the lock of this manager until the
+   * zones returned are published, so that they are diffed against what they
+   * replace.
+   *
+   * @param submitted the zones as bound from the form.
+   * @return the zones to publish.
+   */
   @VisibleForTesting
-  protected void setDerivedPages(List<Zone> zones) {
-    this.derivedPages.clear();
-    for (Zone zone: zones) {
-      derivedPages.put(zone.getName(), zone);
+  @SuppressWarnings("unchecked") // Zone's components are of a raw type.
+  List<Zone> reuseUnchanged(List<Zone> submitted) {
+    Registry<Zone> current = getRegistry();
+    List<Zone> zones = Lists.newArrayList(submitted);
+    Map<Zone, Zone> kept = Maps.newIdentityHashMap();
+    for (int i = 0; i < zones.size(); i++) {
+      Zone previous = current.byName.get(zones.get(i).getName());
+      if (previous != null && !kept.containsKey(previous)
+          && toXml(previous).equals(toXml(zones.get(i)))) {
+        zones.set(i, previous);
+        kept.put(previous, previous);
+      }
     }
+
+    // The components of the zones not kept, by their persisted form.
+    Map<String, Deque<Object>> existing = Maps.newHashMap();
+    for (Zone zone : current.zones) {
+      if (kept.containsKey(zone)) {
+        continue;
+      }
+      for (Object component : zone.getComponents()) {
+        String xml = toXml(component);
+        Deque<Object> same = existing.get(xml);
+        if (same == null) {
+          same = Lists.newLinkedList();
+          existing.put(xml, same);
+        }
+        same.add(component);
+      }
+    }
+
+    for (Zone zone : zones) {
+      if (kept.containsKey(zone)) {
+        continue;
+      }
+      List<Object> components = Lists.newArrayList();
+      for (Object component : zone.getComponents()) {
+        Deque<Object> same = existing.get(toXml(component));
+        components.add(same == null || same.isEmpty()
+            ? component : same.removeFirst());
+      }
+      zone.reuseComponents(components);
+    }
+    return zones;
+  }
+
+  private static String toXml(Object configuration) {
+    return Jenkins.XSTREAM2.toXML(configuration);
   }
 
   /**
@@ -137,11 +488,19 @@ public abstract class DerivedPageManager<Zone extends DerivedPageZone>
   public HttpResponse doConfigSubmit(StaplerRequest req)
       throws ServletException, IOException {
     Jenkins.getActiveInstance().checkPermission(Hudson.ADMINISTER);
+    // Never overwrite a configuration that is still being loaded, or that
+    // failed to.
+    load();
+    checkLoaded();
     JSONObject data = req.getSubmittedForm();
     List<Zone> derivedPages =
         req.bindJSONToList(type, data.get("derivedPages"));
-    setDerivedPages(derivedPages);
-    save();
+    synchronized (this) {
+      // As reload() does, so that neither lands between the other's read
+      // and publish.
+      setDerivedPages(reuseUnchanged(derivedPages));
+      save();
+    }
     return HttpResponses.redirectToContextRoot();
   }
 }
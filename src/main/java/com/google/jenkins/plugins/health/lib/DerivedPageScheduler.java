@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Periodically refreshes the {@link DerivedPageSnapshot} of each
+ * {@link DerivedPageZone} handed to it, at the zone's own
+ * {@link DerivedPageZone#getRefreshInterval()}.
+ *
+ * Each {@link DerivedPageManager} owns one scheduler, while the threads doing
+ * the evaluations are shared by all of them.
+ */
+public class DerivedPageScheduler {
+  private static final Logger LOGGER =
+      Logger.getLogger(DerivedPageScheduler.class.getName());
+
+  /**
+   * The number of threads shared by all schedulers to evaluate zones, unless
+   * set otherwise with the system property of the same name as this class,
+   * followed by {@code .poolSize}.  A zone whose checks are slow holds on to
+   * one for as long as it is evaluated, so there should be enough for the
+   * slow zones not to hold up the others.
+   */
+  public static final int POOL_SIZE = Math.max(1, Integer.getInteger(
+      DerivedPageScheduler.class.getName() + ".poolSize", 8));
+
+  private static ScheduledExecutorService executor;
+
+  private static synchronized ScheduledExecutorService getExecutor() {
+    if (executor == null) {
+      executor = new ScheduledThreadPoolExecutor(POOL_SIZE,
+          new NamingThreadFactory(new DaemonThreadFactory(),
+              DerivedPageScheduler.class.getSimpleName()));
+    }
+    return executor;
+  }
+
+  /**
+   * Stop the threads shared by all schedulers, interrupting the evaluations
+   * in progress.  Schedulers used afterwards get new ones.
+   */
+  static synchronized void shutdownExecutor() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * The pending periodic refresh of each zone, by identity.
+   */
+  private Map<DerivedPageZone, Scheduled> scheduled =
+      Maps.newIdentityHashMap();
+
+  /**
+   * Replace whatever was scheduled so far with periodic refreshes of the given
+   * zones.  Zones with a non-positive refresh interval are evaluated on read
+   * instead, and so are not scheduled.
+   *
+   * Zones that were already scheduled at the same interval keep their pace,
+   * rather than all being refreshed at once whenever the zones change.
+   *
+   * @param zones the zones to keep refreshed.
+   */
+  public synchronized void schedule(
+      List<? extends DerivedPageZone> zones) {
+    Map<DerivedPageZone, Scheduled> previous = scheduled;
+    scheduled = Maps.newIdentityHashMap();
+    for (DerivedPageZone zone : zones) {
+      int interval = zone.getRefreshInterval();
+      if (interval <= 0) {
+        continue;
+      }
+      Scheduled kept = previous.remove(zone);
+      if (kept == null || kept.interval != interval) {
+        if (kept != null) {
+          kept.future.cancel(false);
+        }
+        kept = new Scheduled(interval, getExecutor().scheduleWithFixedDelay(
+            new RefreshTask(zone), 0, interval, TimeUnit.SECONDS));
+      }
+      scheduled.put(zone, kept);
+    }
+    for (Scheduled dropped : previous.values()) {
+      dropped.future.cancel(false);
+    }
+  }
+
+  /**
+   * Stop refreshing all the zones scheduled so far.
+   */
+  public synchronized void cancel() {
+    for (Scheduled pending : scheduled.values()) {
+      pending.future.cancel(false);
+    }
+    scheduled.clear();
+  }
+
+  /**
+   * @return the pending periodic refreshes.
+   */
+  @VisibleForTesting
+  synchronized List<ScheduledFuture<?>> getScheduled() {
+    ImmutableList.Builder<ScheduledFuture<?>> futures =
+        ImmutableList.builder();
+    for (Scheduled pending : scheduled.values()) {
+      futures.add(pending.future);
+    }
+    return futures.build();
+  }
+
+  /**
+   * The periodic refresh of a zone, and the interval it was scheduled at.
+   */
+  private static final class Scheduled {
+    private final int interval;
+    private final ScheduledFuture<?> future;
+
+    Scheduled(int interval, ScheduledFuture<?> future) {
+      this.interval = interval;
+      this.future = future;
+    }
+  }
+
+  /**
+   * Refreshes a single zone as the system user, so that the evaluation does
+   * not depend on who happened to trigger it.
+   */
+  private static class RefreshTask implements Runnable {
+    private final DerivedPageZone zone;
+
+    RefreshTask(DerivedPageZone zone) {
+      this.zone = zone;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      SecurityContext previous = ACL.impersonate(ACL.SYSTEM);
+      try {
+        zone.refresh();
+      } catch (RuntimeException e) {
+        // Swallow, otherwise the executor silently stops rescheduling us.
+        LOGGER.log(Level.WARNING,
+            "Failed to refresh zone " + zone.getName(), e);
+      } finally {
+        SecurityContextHolder.setContext(previous);
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Maps;
+
+import hudson.model.Result;
+
+/**
+ * An immutable, point-in-time record of the {@link Report}s produced by one
+ * evaluation of a {@link DerivedPageZone}'s components.
+ *
+ * Snapshots are published by {@link DerivedPageZone#refresh()} and are what
+ * the UI and the remote access API read, so that serving a page never has to
+ * re-run the derivation logic of its components.
+ *
+ * Each snapshot carries a generation number, which only changes when the
+ * reports do.  Generations are drawn from a single increasing sequence, so
+ * a later change anywhere always yields a larger number.
+ * @param <Report> The specific subtype of DerivedPageComponentReport stored.
+ */
+public final class DerivedPageSnapshot<
+    Report extends DerivedPageComponentReport> {
+  private final Map<String, Report> reports;
+  private final long timestamp;
+  private final Result combinedResult;
+  private final long generation;
+
+  private static final AtomicLong GENERATIONS = new AtomicLong();
+
+  /**
+   * @return a generation number larger than any handed out before.
+   */
+  static long nextGeneration() {
+    return GENERATIONS.incrementAndGet();
+  }
+
+  /**
+   * @param reports the {@link Report}s keyed by component name, in the order
+   * the components are configured.
+   * @param timestamp when the evaluation producing the reports finished, in
+   * milliseconds since the epoch.
+   */
+  public DerivedPageSnapshot(Map<String, Report> reports, long timestamp) {
+    this(reports, timestamp, null);
+  }
+
+  /**
+   * @param reports the {@link Report}s keyed by component name, in the order
+   * the components are configured.
+   * @param timestamp when the evaluation producing the reports finished, in
+   * milliseconds since the epoch.
+   * @param previous the snapshot this one replaces, if any, whose generation
+   * is kept if the reports did not change.
+   */
+  public DerivedPageSnapshot(Map<String, Report> reports, long timestamp,
+      @Nullable DerivedPageSnapshot<Report> previous) {
+    // Components are free to return null reports, so no ImmutableMap here.
+    this.reports = Collections.unmodifiableMap(
+        Maps.newLinkedHashMap(checkNotNull(reports)));
+    this.timestamp = timestamp;
+    Result combined = Result.SUCCESS;
+    for (Report report : this.reports.values()) {
+      if (report != null) {
+        combined = combined.combine(report.getResult());
+      }
+    }
+    this.combinedResult = combined;
+    this.generation =
+        (previous != null && previous.reports.equals(this.reports))
+        ? previous.generation : nextGeneration();
+  }
+
+  /**
+   * @return the {@link Report}s keyed by component name.
+   */
+  public Map<String, Report> getReports() {
+    return reports;
+  }
+
+  /**
+   * @return the worst {@link Result} among the reports, {@link
+   * Result#SUCCESS} if there are none.
+   */
+  public Result getCombinedResult() {
+    return combinedResult;
+  }
+
+  /**
+   * @return the generation of this snapshot, which is the same as that of
+   * the snapshot it replaced if and only if their reports are equal.
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @return when this snapshot was taken, in milliseconds since the epoch.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import hudson.model.Result;
+
+/**
+ * A bounded, in-memory log of the changes in {@link Result} of zones and of
+ * their components, which clients can wait on instead of polling every zone.
+ *
+ * Each {@link Transition} gets the next number of an increasing sequence.
+ * A client passes the last number it saw to {@link #await}, and gets back
+ * every transition after it, waiting for the next one if there is none yet.
+ *
+ * Results are compared with the latest ones recorded for a zone of the same
+ * name, rather than with the previous snapshot of the same instance, so
+ * that a zone replaced by a reconfigured one only reports what changed.
+ */
+public final class DerivedPageTransitions {
+  /**
+   * How many transitions are kept for clients that fall behind.
+   */
+  public static final int CAPACITY = 1024;
+
+  /** Guarded by {@code this}. */
+  private final Deque<Transition> transitions = new ArrayDeque<Transition>();
+  /** Guarded by {@code this}. */
+  private long sequence;
+
+  /**
+   * The latest snapshot recorded for each zone, by name.  Guarded by
+   * {@code this}.
+   */
+  private final Map<String, DerivedPageSnapshot<?>> latest =
+      Maps.newHashMap();
+
+  /**
+   * Record the changes in a zone since the latest snapshot recorded for it.
+   *
+   * @param zone the name of the zone.
+   * @param current the snapshot just published.
+   */
+  public synchronized <Report extends DerivedPageComponentReport> void record(
+      String zone, DerivedPageSnapshot<Report> current) {
+    DerivedPageSnapshot<?> previous = latest.put(zone, current);
+    if (previous != null
+        && previous.getGeneration() == current.getGeneration()) {
+      return; // Nothing changed.
+    }
+    Result before = previous == null ? null : previous.getCombinedResult();
+    if (before != current.getCombinedResult()) {
+      append(new Transition(zone, null, before,
+          current.getCombinedResult(), current.getTimestamp()));
+    }
+    for (Map.Entry<String, Report> entry : current.getReports().entrySet()) {
+      Result was = previous == null
+          ? null : resultOf(previous.getReports().get(entry.getKey()));
+      Result is = resultOf(entry.getValue());
+      if (was != is) {
+        append(new Transition(zone, entry.getKey(), was, is,
+            current.getTimestamp()));
+      }
+    }
+    if (previous != null) {
+      for (Map.Entry<String, ? extends DerivedPageComponentReport> entry
+               : previous.getReports().entrySet()) {
+        if (!current.getReports().containsKey(entry.getKey())) {
+          removed(zone, entry.getKey(), resultOf(entry.getValue()),
+              current.getTimestamp());
+        }
+      }
+    }
+    notifyAll();
+  }
+
+  /**
+   * Record that a zone or a component is gone, unless it had no result.
+   */
+  private void removed(String zone, @Nullable String component,
+      @Nullable Result was, long timestamp) {
+    if (was != null) {
+      append(new Transition(zone, component, was, null, timestamp));
+    }
+  }
+
+  /**
+   * Forget the zones not among the given ones, such as once they are no
+   * longer configured, recording that they and their components are gone.
+   * One configured again later reports its results as new.
+   *
+   * @param zones the names of the zones to keep track of.
+   */
+  public synchronized void retain(Set<String> zones) {
+    long now = System.currentTimeMillis();
+    boolean changed = false;
+    Iterator<Map.Entry<String, DerivedPageSnapshot<?>>> iterator =
+        latest.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, DerivedPageSnapshot<?>> entry = iterator.next();
+      if (zones.contains(entry.getKey())) {
+        continue;
+      }
+      iterator.remove();
+      DerivedPageSnapshot<?> gone = entry.getValue();
+      removed(entry.getKey(), null, gone.getCombinedResult(), now);
+      for (Map.Entry<String, ? extends DerivedPageComponentReport> report
+               : gone.getReports().entrySet()) {
+        removed(entry.getKey(), report.getKey(), resultOf(report.getValue()),
+            now);
+      }
+      changed = true;
+    }
+    if (changed) {
+      notifyAll();
+    }
+  }
+
+  @Nullable
+  private static Result resultOf(@Nullable DerivedPageComponentReport report) {
+    return report == null ? null : report.getResult();
+  }
+
+  private void append(Transition transition) {
+    transition.sequence = ++sequence;
+    transitions.addLast(transition);
+    if (transitions.size() > CAPACITY) {
+      transitions.removeFirst();
+    }
+  }
+
+  /**
+   * @return the number of the latest transition, zero if there was none.
+   */
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Wait until there is a transition after the given one, or until the
+   * timeout elapses.  A number past the latest one, such as one handed out
+   * before Jenkins restarted, is answered right away, as a gap.
+   *
+   * @param after the number of the last transition already seen.
+   * @param timeout how long to wait for one.
+   * @param unit the unit of the timeout.
+   * @return the transitions after the given one that are still kept, possibly
+   * none if the timeout elapsed.
+   */
+  public synchronized Events await(long after, long timeout,
+      TimeUnit unit) throws InterruptedException {
+    if (after > sequence) {
+      return new Events(sequence, ImmutableList.<Transition>of(), true);
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (sequence <= after) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return new Events(sequence, ImmutableList.<Transition>of(), false);
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    List<Transition> newer = Lists.newArrayList();
+    Iterator<Transition> iterator = transitions.descendingIterator();
+    while (iterator.hasNext()) {
+      Transition transition = iterator.next();
+      if (transition.sequence <= after) {
+        break;
+      }
+      newer.add(transition);
+    }
+    // Those right after the given one were dropped to stay within capacity.
+    boolean gap = transitions.isEmpty()
+        || transitions.getFirst().sequence > after + 1;
+    return new Events(sequence, Lists.reverse(newer), gap);
+  }
+
+  /**
+   * What {@link #await} found.
+   */
+  public static final class Events {
+    private final long sequence;
+    private final List<Transition> transitions;
+    private final boolean gap;
+
+    Events(long sequence, List<Transition> transitions, boolean gap) {
+      this.sequence = sequence;
+      this.transitions = transitions;
+      this.gap = gap;
+    }
+
+    /**
+     * @return the number of the latest transition, to wait for those after
+     * it next.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return the transitions found, oldest first.
+     */
+    public List<Transition> getTransitions() {
+      return transitions;
+    }
+
+    /**
+     * @return whether some transitions after the one asked about are
+     * missing, as they are no longer kept, or the number asked about is not
+     * one of this sequence.  Results are then best read afresh.
+     */
+    public boolean isGap() {
+      return gap;
+    }
+  }
+
+  /**
+   * A change in the {@link Result} of a zone or of one of its components.
+   */
+  public static final class Transition
+      implements DerivedPageJsonWriter.Exportable {
+    private long sequence;
+    private final String zone;
+    @Nullable private final String component;
+    @Nullable private final Result previous;
+    @Nullable private final Result result;
+    private final long timestamp;
+
+    Transition(String zone, @Nullable String component,
+        @Nullable Result previous, @Nullable Result result, long timestamp) {
+      this.zone = checkNotNull(zone);
+      this.component = component;
+      this.previous = previous;
+      this.result = result;
+      this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the number of this transition in the sequence.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return the name of the zone.
+     */
+    public String getZone() {
+      return zone;
+    }
+
+    /**
+     * @return the name of the component whose result changed, or null if
+     * this is about the combined result of the zone.
+     */
+    @Nullable public String getComponent() {
+      return component;
+    }
+
+    /**
+     * @return the result before, null if there was none.
+     */
+    @Nullable public Result getPrevious() {
+      return previous;
+    }
+
+    /**
+     * @return the result after, null if the component reported none, or if
+     * the zone or the component was removed.
+     */
+    @Nullable public Result getResult() {
+      return result;
+    }
+
+    /**
+     * @return when the snapshot with the new result was taken, in
+     * milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeJson(DerivedPageJsonWriter json) throws IOException {
+      json.beginObject()
+          .name("sequence").value(sequence)
+          .name("zone").value(zone)
+          .name("component").value(component)
+          .name("previous").value((Object) previous)
+          .name("result").value((Object) result)
+          .name("timestamp").value(timestamp)
+          .endObject();
+    }
+  }
+}
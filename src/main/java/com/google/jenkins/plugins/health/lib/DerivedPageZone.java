@@ -15,18 +15,40 @@
  */
 package com.google.jenkins.plugins.health.lib;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import hudson.model.ModelObject;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 /**
  * A {@link DerivedPageZone} is a named container for
@@ -38,6 +60,11 @@ import hudson.model.ModelObject;
  *
  * Each {@link DerivedPageZone} has a unique URL path
  * "/${DerivedPageAction.getUrlName}/zone/${zoneName}".
+ *
+ * Components are evaluated by {@link #refresh()}, which publishes the
+ * results as an immutable {@link DerivedPageSnapshot}.  Readers are served
+ * from the latest snapshot; a {@link DerivedPageManager} refreshes it in the
+ * background every {@link #getRefreshInterval()} seconds.
  * @param <Component> The type of DerivedPageComponent be that {@link Component}
  * this Zone stores.
  * @param <Report> The specific subtype of DerivedPageComponentReport that
@@ -47,7 +74,7 @@ import hudson.model.ModelObject;
 public abstract class DerivedPageZone<
     Component extends DerivedPageComponent<Report>,
     Report extends DerivedPageComponentReport>
-    implements ModelObject {
+    implements ModelObject, DerivedPageJsonWriter.Exportable {
   /**
    * @return the name of this zone.
    */
@@ -63,7 +90,122 @@ public abstract class DerivedPageZone<
   public List<Component> getComponents() {
     return ImmutableList.copyOf(components);
   }
-  private final List<Component> components;
+  // Only replaced before the zone is published, by reuseComponents.
+  private volatile List<Component> components;
+
+  /**
+   * Replace the components of this zone with equivalent ones, such as those
+   * of the zone it replaces, so that they keep their state.  Only called
+   * before the zone is handed to readers.
+   */
+  void reuseComponents(List<Component> equivalent) {
+    checkArgument(equivalent.size() == components.size());
+    this.components = ImmutableList.copyOf(equivalent);
+  }
+
+  /**
+   * The number of seconds between background refreshes when none is
+   * configured.
+   */
+  public static final int DEFAULT_REFRESH_INTERVAL = 30;
+
+  /**
+   * @return the number of seconds between background refreshes of this zone,
+   * or zero if the zone is evaluated on every read instead.
+   */
+  public int getRefreshInterval() {
+    return refreshInterval == null
+        ? DEFAULT_REFRESH_INTERVAL : refreshInterval;
+  }
+
+  /**
+   * @param refreshInterval the number of seconds between background
+   * refreshes of this zone, zero to evaluate on every read.
+   */
+  @DataBoundSetter
+  public void setRefreshInterval(int refreshInterval) {
+    this.refreshInterval = Math.max(0, refreshInterval);
+  }
+  // Boxed so that zones persisted before this existed pick up the default.
+  @Nullable private Integer refreshInterval;
+
+  /**
+   * @return whether the components of this zone are derived concurrently, so
+   * that a refresh takes as long as the slowest component rather than as
+   * long as all of them together.
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * @param parallel whether to derive the components of this zone
+   * concurrently.
+   */
+  @DataBoundSetter
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+  private boolean parallel;
+
+  /**
+   * The number of threads shared by all zones to derive their components in
+   * parallel.  Components beyond that wait for a thread to free up.
+   */
+  private static final int PARALLELISM =
+      Math.max(4, Runtime.getRuntime().availableProcessors());
+
+  private static ExecutorService parallelExecutor;
+
+  private static synchronized ExecutorService getParallelExecutor() {
+    if (parallelExecutor == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(
+          PARALLELISM, PARALLELISM, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new NamingThreadFactory(new DaemonThreadFactory(),
+              DerivedPageZone.class.getSimpleName()));
+      pool.allowCoreThreadTimeOut(true);
+      parallelExecutor = pool;
+    }
+    return parallelExecutor;
+  }
+
+  /**
+   * Stop the threads shared by all zones, interrupting the components being
+   * derived.  Zones evaluated afterwards get new ones.
+   */
+  static synchronized void shutdownParallelExecutor() {
+    if (parallelExecutor != null) {
+      parallelExecutor.shutdownNow();
+      parallelExecutor = null;
+    }
+  }
+
+  /**
+   * The most recently published evaluation, null until the first one.
+   */
+  private transient volatile DerivedPageSnapshot<Report> snapshot;
+
+  /**
+   * The evaluation currently running, if any, which concurrent callers of
+   * {@link #refresh()} share instead of starting their own.  Guarded by
+   * {@code this}.
+   */
+  @Nullable
+  private transient FutureTask<DerivedPageSnapshot<Report>> inFlight;
+
+  /**
+   * Where changes in the results of this zone are recorded, if anywhere.
+   */
+  @Nullable private transient volatile DerivedPageTransitions transitions;
+
+  /**
+   * @param transitions where to record changes in the results of this zone
+   * from now on.
+   */
+  void setTransitions(@Nullable DerivedPageTransitions transitions) {
+    this.transitions = transitions;
+  }
 
   /**
    * @param name the name of this {@link DerivedPageZone}.
@@ -89,14 +231,226 @@ public abstract class DerivedPageZone<
   protected abstract Report derivePageComponent(Component component);
 
   /**
-   * @return results of {@link DerivedPageComponent}s.
+   * Evaluate every {@link Component} now and publish the results as this
+   * zone's {@link DerivedPageSnapshot}.
+   *
+   * If an evaluation is already running, wait for it and return its result
+   * rather than starting another one, so that the cost of a zone does not
+   * grow with the number of concurrent readers.
+   *
+   * @return the newly published snapshot.
+   */
+  public DerivedPageSnapshot<Report> refresh() {
+    FutureTask<DerivedPageSnapshot<Report>> task;
+    boolean owner = false;
+    synchronized (this) {
+      task = inFlight;
+      if (task == null) {
+        task = new FutureTask<DerivedPageSnapshot<Report>>(
+            new Callable<DerivedPageSnapshot<Report>>() {
+              @Override
+              public DerivedPageSnapshot<Report> call() {
+                return evaluate();
+              }
+            });
+        inFlight = task;
+        owner = true;
+      }
+    }
+    if (owner) {
+      try {
+        task.run();
+      } finally {
+        synchronized (this) {
+          inFlight = null;
+        }
+      }
+    }
+    return await(task);
+  }
+
+  /**
+   * Derive every {@link Component} and publish the results.
+   */
+  private DerivedPageSnapshot<Report> evaluate() {
+    List<Component> components = getComponents();
+    Map<String, Report> results = Maps.newLinkedHashMap();
+    if (isParallel() && components.size() > 1) {
+      List<Future<Report>> futures = submitAll(components);
+      for (int i = 0; i < components.size(); i++) {
+        results.put(namePageComponent(components.get(i)),
+            await(futures.get(i)));
+      }
+    } else {
+      for (Component component : components) {
+        results.put(namePageComponent(component),
+            derivePageComponent(component));
+      }
+    }
+    DerivedPageSnapshot<Report> previous = this.snapshot;
+    DerivedPageSnapshot<Report> fresh = new DerivedPageSnapshot<Report>(
+        results, System.currentTimeMillis(), previous);
+    this.snapshot = fresh;
+    DerivedPageTransitions observer = this.transitions;
+    if (observer != null) {
+      observer.record(getName(), fresh);
+    }
+    published(fresh);
+    return fresh;
+  }
+
+  /**
+   * Called on the evaluating thread each time a new snapshot is published,
+   * for subclasses to keep aggregates of the results up to date.  Does
+   * nothing by default.
+   */
+  protected void published(DerivedPageSnapshot<Report> snapshot) {
+  }
+
+  /**
+   * Start deriving each of the given components on the shared executor, as
+   * whoever is asking for the refresh.
+   */
+  private List<Future<Report>> submitAll(List<Component> components) {
+    final SecurityContext context = SecurityContextHolder.getContext();
+    List<Future<Report>> futures =
+        Lists.newArrayListWithCapacity(components.size());
+    for (final Component component : components) {
+      futures.add(getParallelExecutor().submit(new Callable<Report>() {
+        @Override
+        public Report call() {
+          SecurityContext previous = SecurityContextHolder.getContext();
+          SecurityContextHolder.setContext(context);
+          try {
+            return derivePageComponent(component);
+          } finally {
+            SecurityContextHolder.setContext(previous);
+          }
+        }
+      }));
+    }
+    return futures;
+  }
+
+  /**
+   * Wait for a computation running elsewhere, surfacing its failure the same
+   * way as if it had run on the calling thread.
+   */
+  private static <T> T await(Future<T> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * The request attribute under which the snapshots already read while
+   * serving a request are kept.
+   */
+  private static final String PINNED_SNAPSHOTS =
+      DerivedPageZone.class.getName() + ".pinnedSnapshots";
+
+  /**
+   * @return the most recently published {@link DerivedPageSnapshot}.  If none
+   * was published yet, or if this zone is not refreshed in the background,
+   * the components are evaluated synchronously first.
+   *
+   * While serving an HTTP request, the first snapshot read is pinned to the
+   * request, so that every part of the response describes the same
+   * evaluation and on-demand zones are evaluated at most once per request.
+   */
+  public DerivedPageSnapshot<Report> getSnapshot() {
+    StaplerRequest request = Stapler.getCurrentRequest();
+    Map<DerivedPageZone, DerivedPageSnapshot> pinned =
+        request == null ? null : getPinnedSnapshots(request);
+    if (pinned != null && pinned.containsKey(this)) {
+      @SuppressWarnings("unchecked")
+      DerivedPageSnapshot<Report> current = pinned.get(this);
+      return current;
+    }
+
+    DerivedPageSnapshot<Report> current = this.snapshot;
+    if (current == null || getRefreshInterval() <= 0) {
+      current = refresh();
+    }
+    if (pinned != null) {
+      pinned.put(this, current);
+    }
+    return current;
+  }
+
+  /**
+   * @return the most recently published {@link DerivedPageSnapshot}, or null
+   * if none was published yet.  Unlike {@link #getSnapshot()}, this never
+   * evaluates the components.
+   */
+  @Nullable public DerivedPageSnapshot<Report> getLatestSnapshot() {
+    return snapshot;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<DerivedPageZone, DerivedPageSnapshot> getPinnedSnapshots(
+      StaplerRequest request) {
+    Map<DerivedPageZone, DerivedPageSnapshot> pinned =
+        (Map<DerivedPageZone, DerivedPageSnapshot>)
+        request.getAttribute(PINNED_SNAPSHOTS);
+    if (pinned == null) {
+      // Zones compare by identity, and that is what we want here anyway.
+      pinned = Maps.newIdentityHashMap();
+      request.setAttribute(PINNED_SNAPSHOTS, pinned);
+    }
+    return pinned;
+  }
+
+  /**
+   * @return results of {@link DerivedPageComponent}s, as of the latest
+   * {@link DerivedPageSnapshot}.
    */
   @Exported
   public Map<String, Report> getReports() {
-    Map<String, Report> results = Maps.newLinkedHashMap();
-    for (Component component : getComponents()) {
-      results.put(namePageComponent(component), derivePageComponent(component));
+    return getSnapshot().getReports();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Writes the latest snapshot of this zone the way the remote access API
+   * exports it, one report at a time.
+   */
+  @Override
+  public void writeJson(DerivedPageJsonWriter json) throws IOException {
+    json.beginObject();
+    writeJsonProperties(json);
+    json.endObject();
+  }
+
+  /**
+   * Write the properties of this zone's JSON object, for subclasses that
+   * export more to add theirs.
+   */
+  protected void writeJsonProperties(DerivedPageJsonWriter json)
+      throws IOException {
+    json.name("reports");
+    writeReports(json, getSnapshot());
+  }
+
+  /**
+   * Write the reports of a snapshot as a JSON object keyed by component name.
+   */
+  static void writeReports(DerivedPageJsonWriter json,
+      DerivedPageSnapshot<?> snapshot) throws IOException {
+    json.beginObject();
+    for (Map.Entry<String, ? extends DerivedPageComponentReport> entry
+             : snapshot.getReports().entrySet()) {
+      json.name(entry.getKey());
+      DerivedPageComponentReport report = entry.getValue();
+      if (report == null) {
+        json.nullValue();
+      } else {
+        report.writeJson(json);
+      }
     }
-    return results;
+    json.endObject();
   }
 }
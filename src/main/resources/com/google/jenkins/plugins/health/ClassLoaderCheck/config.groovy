@@ -16,6 +16,8 @@
 
 package com.google.jenkins.plugins.health.ClassLoaderCheck
 
+import com.google.jenkins.plugins.health.HealthCheck
+
 def f=namespace(lib.FormTagLib)
 def l=namespace(lib.LayoutTagLib)
 def st=namespace("jelly:stapler")
@@ -26,3 +28,15 @@ f.entry(title:_("Classes to check"),
    f.expandableTextbox(required:true)
 }
 
+f.advanced {
+   f.entry(title:_("Timeout"), field:"timeout",
+           description:_("In seconds, 0 to never time out")) {
+      f.number(clazz:"non-negative-number",
+               default:HealthCheck.DEFAULT_TIMEOUT)
+   }
+   f.entry(title:_("Log limit"), field:"logLimit",
+           description:_("In kilobytes, 0 to keep the whole log")) {
+      f.number(clazz:"non-negative-number",
+               default:HealthCheck.DEFAULT_LOG_LIMIT)
+   }
+}
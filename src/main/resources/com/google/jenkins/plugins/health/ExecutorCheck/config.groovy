@@ -16,6 +16,8 @@
 
 package com.google.jenkins.plugins.health.ExecutorCheck
 
+import com.google.jenkins.plugins.health.HealthCheck
+
 def f=namespace(lib.FormTagLib)
 def l=namespace(lib.LayoutTagLib)
 def st=namespace("jelly:stapler")
@@ -26,6 +28,19 @@ f.entry(title:_("Required number of executors"), field:"minExecutors") {
 
 f.entry(title:_("Labels to check"),
         field:"labelsSsv",
-        description:_("Separated by white spaces")) {
+        description:_("Separated by white spaces, or a label expression")) {
    f.textbox(autoCompleteDelimChar:' ')
 }
+
+f.advanced {
+   f.entry(title:_("Timeout"), field:"timeout",
+           description:_("In seconds, 0 to never time out")) {
+      f.number(clazz:"non-negative-number",
+               default:HealthCheck.DEFAULT_TIMEOUT)
+   }
+   f.entry(title:_("Log limit"), field:"logLimit",
+           description:_("In kilobytes, 0 to keep the whole log")) {
+      f.number(clazz:"non-negative-number",
+               default:HealthCheck.DEFAULT_LOG_LIMIT)
+   }
+}
@@ -33,8 +33,9 @@ l.layout(norefresh:true, title:my.displayName, permission:my.CHECK) {
       p()
 
       my.zones.each { zone ->
+        def report = zone.combinedReport
         h2 {
-          img(src:"${imagesURL}/48x48/${zone.combinedReport.result.color.image}",
+          img(src:"${imagesURL}/48x48/${report.result.color.image}",
               height:24, width:24)
           text(" ")
           a(href:"zone/${zone.name}") {
@@ -42,7 +43,7 @@ l.layout(norefresh:true, title:my.displayName, permission:my.CHECK) {
           }
           hr()
         }
-        text(zone.combinedReport.value)
+        text(report.value)
       }
     }
 }
@@ -32,6 +32,11 @@ l.layout(norefresh:true, title:my.displayName, permission:Jenkins.ADMINISTER) {
         text(my.displayName)
       }
 
+      if (my.loadFailure != null) {
+        div(class:"error",
+            _("The configuration file could not be loaded, see the Jenkins log. It will not be saved over until it is fixed or removed."))
+      }
+
       f.form(method:"post", name:"config", action:"configSubmit") {
         f.block {
           f.hetero_list(addCaption:_("Add Zone"),
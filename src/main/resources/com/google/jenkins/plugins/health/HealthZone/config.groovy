@@ -18,6 +18,7 @@ package com.google.jenkins.plugins.health.HealthZone
 
 import jenkins.model.Jenkins
 import com.google.jenkins.plugins.health.HealthCheck
+import com.google.jenkins.plugins.health.lib.DerivedPageZone
 
 def f=namespace(lib.FormTagLib)
 def l=namespace(lib.LayoutTagLib)
@@ -27,6 +28,16 @@ f.entry(title:_("Zone name"), field:"name") {
    f.textbox(clazz:"required")
 }
 
+f.entry(title:_("Refresh interval"), field:"refreshInterval",
+        description:_("In seconds, 0 to evaluate on every request")) {
+   f.number(clazz:"non-negative-number",
+            default:DerivedPageZone.DEFAULT_REFRESH_INTERVAL)
+}
+
+f.entry(title:_("Evaluate checks in parallel"), field:"parallel") {
+   f.checkbox()
+}
+
 f.block {
     f.hetero_list(addCaption:_("Add Health Check"),
                   deleteCaption:_("Delete Check"),
@@ -26,6 +26,32 @@ def st=namespace("jelly:stapler")
 l.layout(norefresh:true, title:my.descriptor.displayName) {
     st.include(it:Jenkins.getInstance(), page:"sidepanel.jelly")
     l.main_panel {
+      p {
+        a(href:"history") {
+          text(_("History"))
+        }
+      }
+
+      table(class:"pane bigtable") {
+        tr {
+          th(_("Window"))
+          th(_("Evaluations"))
+          th(_("Successful"))
+          th(_("Uptime"))
+          th(_("Time failing"))
+        }
+        my.availability.each { window ->
+          tr {
+            td(_(window.period.name()))
+            td(String.valueOf(window.evaluations))
+            td(window.successRatio == null ? "-"
+                : String.format("%.3f%%", window.successRatio * 100))
+            td(window.uptime == null ? "-"
+                : String.format("%.3f%%", window.uptime * 100))
+            td(Functions.getTimeSpanString(window.failingMillis))
+          }
+        }
+      }
 
       my.reports.each { name,report ->
         h2 {
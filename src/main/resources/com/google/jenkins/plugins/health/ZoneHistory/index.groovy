@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.ZoneHistory
+
+import jenkins.model.Jenkins
+
+def l=namespace(lib.LayoutTagLib)
+def st=namespace("jelly:stapler")
+
+l.layout(norefresh:true, title:my.displayName) {
+    st.include(it:Jenkins.getInstance(), page:"sidepanel.jelly")
+    l.main_panel {
+      h1(my.displayName)
+
+      my.checks.each { check ->
+        def samples = check.samples
+        h2 {
+          text("${check.name}")
+        }
+        if (samples.size() == 0) {
+          p(_("noSamples"))
+          return
+        }
+        p(_("changes", samples.size(), check.changes))
+        table(class:"sortable pane bigtable") {
+          tr {
+            th(_("Finished"))
+            th(_("Result"))
+            th(_("Latency (ms)"))
+          }
+          // Newest first.
+          (samples.size() - 1).downTo(0) { i ->
+            def result = samples.getResult(i)
+            tr {
+              td(new Date(samples.getTimestamp(i)).toString())
+              td {
+                img(src:"${imagesURL}/16x16/${result.color.image}",
+                    height:16, width:16)
+                text(" ${result}")
+              }
+              td(String.format("%.3f", samples.getLatencyMicros(i) / 1000.0))
+            }
+          }
+        }
+      }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Unit test for {@link BoundedLogBuffer}.
+ */
+public class BoundedLogBufferTest {
+  @Test
+  public void empty() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    assertTrue(underTest.isEmpty());
+    assertEquals("", underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void withinLimit() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    write(underTest, "abc");
+    underTest.write('d');
+    write(underTest, "efgh");
+    assertFalse(underTest.isEmpty());
+    assertEquals(0, underTest.getDropped());
+    assertEquals("abcdefgh", underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void keepsHeadAndTail() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    write(underTest, "abcdef");
+    for (char c : "ghijk".toCharArray()) {
+      underTest.write(c);
+    }
+    write(underTest, "lm");
+    assertEquals(5, underTest.getDropped());
+    assertEquals("abcd" + Messages.HealthCheck_LogTruncated(5) + "jklm",
+        underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void largeWrite() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    write(underTest, "abcdefghijklmnopqrstuvwxyz");
+    assertEquals(18, underTest.getDropped());
+    assertEquals("abcd" + Messages.HealthCheck_LogTruncated(18) + "wxyz",
+        underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void keepsWholeCharacters() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    // Two bytes each in UTF-8, so the head ends and the tail starts halfway
+    // through one.
+    write(underTest, "abc\u00e9\u00e8\u00ea\u00ebxyz");
+    assertEquals("abc" + Messages.HealthCheck_LogTruncated(8) + "xyz",
+        underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void joinsHeadAndTail() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    write(underTest, "abc\u00e9de");
+    assertEquals(0, underTest.getDropped());
+    assertEquals("abc\u00e9de", underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void unlimited() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(0);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      expected.append(i);
+    }
+    write(underTest, expected.toString());
+    assertEquals(0, underTest.getDropped());
+    assertEquals(expected.toString(), underTest.toString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void reset() {
+    BoundedLogBuffer underTest = new BoundedLogBuffer(8);
+    write(underTest, "abcdefghijkl");
+    underTest.reset(4);
+    assertTrue(underTest.isEmpty());
+    write(underTest, "mnopq");
+    assertEquals("mn" + Messages.HealthCheck_LogTruncated(1) + "pq",
+        underTest.toString(Charsets.UTF_8));
+  }
+
+  private static void write(BoundedLogBuffer buffer, String text) {
+    byte[] bytes = text.getBytes(Charsets.UTF_8);
+    buffer.write(bytes, 0, bytes.length);
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.jenkins.plugins.health;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -30,6 +31,8 @@ import com.google.common.collect.Iterables;
 import hudson.model.Result;
 import hudson.model.TaskListener;
 
+import jenkins.model.Jenkins;
+
 /**
  * Unit tests for {@link ClassLoaderCheck}.
  */
@@ -76,6 +79,37 @@ public class ClassLoaderCheckTest {
     assertEquals(Result.FAILURE, underTest.perform(taskListener));
   }
 
+  @WithoutJenkins
+  @Test
+  public void perform_cachesResolution() {
+    ClassLoader classLoader = ClassLoaderCheck.class.getClassLoader();
+    ClassLoaderCheck.Resolutions.invalidate();
+    assertFalse(ClassLoaderCheck.Resolutions.isCached(
+        classesToCheckCsv, classLoader));
+
+    assertEquals(Result.SUCCESS, underTest.perform(taskListener));
+    assertTrue(ClassLoaderCheck.Resolutions.isCached(
+        classesToCheckCsv, classLoader));
+
+    ClassLoaderCheck.Resolutions.invalidate();
+    assertFalse(ClassLoaderCheck.Resolutions.isCached(
+        classesToCheckCsv, classLoader));
+  }
+
+  @Test
+  public void perform_pluginNotFound() {
+    this.underTest = new ClassLoaderCheck(
+        classesToCheckCsv + "@this-plugin-does-not-exist");
+    assertEquals(Result.FAILURE, underTest.perform(taskListener));
+  }
+
+  @Test
+  public void perform_afterReload() {
+    ClassLoaderCheck reloaded = (ClassLoaderCheck)
+        Jenkins.XSTREAM2.fromXML(Jenkins.XSTREAM2.toXML(underTest));
+    assertEquals(Result.SUCCESS, reloaded.perform(taskListener));
+  }
+
   @WithoutJenkins
   @Test
   public void descriptor_displayName() {
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.google.common.collect.ImmutableSet;
+
+import hudson.model.Label;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.OfflineCause;
+
+/**
+ * Unit tests for {@link ExecutorCapacityIndex}.
+ */
+public class ExecutorCapacityIndexTest {
+  @Rule public JenkinsRule jenkins = new JenkinsRule();
+  private ExecutorCapacityIndex underTest;
+  private Set<Label> foo;
+
+  @Before
+  public void setup() {
+    underTest = ExecutorCapacityIndex.get();
+    foo = ImmutableSet.<Label>of(jenkins.getInstance().getLabelAtom("foo"));
+  }
+
+  @Test
+  public void extension_registered() {
+    assertNotNull(underTest);
+  }
+
+  @Test
+  public void getOnlineExecutors_master() {
+    int executors = jenkins.getInstance().getNumExecutors();
+    assertEquals(executors,
+        underTest.getOnlineExecutors(ImmutableSet.<Label>of()));
+    assertEquals(executors, underTest.getOnlineExecutors(
+        ImmutableSet.<Label>of(jenkins.getInstance().getSelfLabel())));
+    assertEquals(0, underTest.getOnlineExecutors(foo));
+  }
+
+  @Test
+  public void getOnlineExecutors_followsNodeEvents() throws Exception {
+    assertEquals(0, underTest.getOnlineExecutors(foo));
+
+    DumbSlave slave = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+    awaitOnlineExecutors(slave.getNumExecutors());
+
+    slave.toComputer().setTemporarilyOffline(true,
+        new OfflineCause.ByCLI("testing"));
+    awaitOnlineExecutors(0);
+
+    slave.toComputer().setTemporarilyOffline(false, null);
+    awaitOnlineExecutors(slave.getNumExecutors());
+
+    jenkins.getInstance().removeNode(slave);
+    awaitOnlineExecutors(0);
+  }
+
+  @Test
+  public void getOnlineExecutors_followsRelabelling() throws Exception {
+    DumbSlave slave = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+    awaitOnlineExecutors(slave.getNumExecutors());
+
+    // Replaces the node of that name, keeping its computer online.
+    jenkins.createSlave(slave.getNodeName(), "bar", null);
+    awaitOnlineExecutors(0);
+  }
+
+  @Test
+  public void nodeChurn_noRebuild() throws Exception {
+    assertEquals(0, underTest.getOnlineExecutors(foo));
+    int rebuilds = underTest.getRebuilds();
+
+    DumbSlave slave = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+    awaitOnlineExecutors(slave.getNumExecutors());
+    jenkins.createSlave(slave.getNodeName(), "bar", null);
+    awaitOnlineExecutors(0);
+    jenkins.getInstance().removeNode(slave);
+    awaitOnlineExecutors(ImmutableSet.<Label>of(),
+        jenkins.getInstance().getNumExecutors());
+
+    assertEquals(rebuilds, underTest.getRebuilds());
+  }
+
+  @Test
+  public void rebuild() throws Exception {
+    assertEquals(0, underTest.getOnlineExecutors(foo));
+    DumbSlave slave = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+
+    underTest.rebuild();
+    assertEquals(slave.getNumExecutors(), underTest.getOnlineExecutors(foo));
+  }
+
+  @Test
+  public void rebuild_sharedLabels() throws Exception {
+    Label bar = jenkins.getInstance().getLabelAtom("bar");
+    DumbSlave first = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+    DumbSlave second = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+    DumbSlave third = jenkins.createOnlineSlave(bar);
+
+    underTest.rebuild();
+    Set<Label> fooOrBar = ImmutableSet.<Label>builder()
+        .addAll(foo).add(bar).build();
+    assertEquals(first.getNumExecutors() + second.getNumExecutors(),
+        underTest.getOnlineExecutors(foo));
+    assertEquals(first.getNumExecutors() + second.getNumExecutors()
+        + third.getNumExecutors(), underTest.getOnlineExecutors(fooOrBar));
+
+    jenkins.getInstance().removeNode(second);
+    awaitOnlineExecutors(first.getNumExecutors());
+    underTest.rebuild();
+    assertEquals(first.getNumExecutors() + third.getNumExecutors(),
+        underTest.getOnlineExecutors(fooOrBar));
+  }
+
+  @Test
+  public void getOnlineExecutors_expression() throws Exception {
+    Set<Label> fooNotBar = ImmutableSet.<Label>of(
+        Label.parseExpression("foo && !bar"));
+    DumbSlave plain = jenkins.createOnlineSlave(
+        jenkins.getInstance().getLabelAtom("foo"));
+    DumbSlave both = jenkins.createSlave("both", "foo bar", null);
+    both.toComputer().connect(false).get();
+
+    underTest.rebuild();
+    assertEquals(plain.getNumExecutors() + both.getNumExecutors(),
+        underTest.getOnlineExecutors(foo));
+    assertEquals(plain.getNumExecutors(),
+        underTest.getOnlineExecutors(fooNotBar));
+  }
+
+  /**
+   * Node events may reach the index after whoever caused them moved on, so
+   * give them a little while to arrive.
+   */
+  private void awaitOnlineExecutors(int expected) throws InterruptedException {
+    awaitOnlineExecutors(foo, expected);
+  }
+
+  private void awaitOnlineExecutors(Set<Label> labels, int expected)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (underTest.getOnlineExecutors(labels) != expected
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(expected, underTest.getOnlineExecutors(labels));
+  }
+}
@@ -18,7 +18,9 @@ package com.google.jenkins.plugins.health;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -27,9 +29,14 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
 import hudson.model.AutoCompletionCandidates;
+import hudson.model.Label;
 import hudson.model.Result;
 import hudson.model.TaskListener;
+import hudson.util.FormValidation;
 
 import jenkins.model.Jenkins;
 
@@ -65,6 +72,53 @@ public class ExecutorCheckTest {
     }
   }
 
+  @Test
+  public void constructor_expression() {
+    underTest = new ExecutorCheck(42, " master && !gpu ");
+    assertEquals("master && !gpu", underTest.getLabelsSsv());
+    Label expression = Iterables.getOnlyElement(underTest.getLabels());
+    assertTrue(expression.matches(ImmutableSet.of(
+        Jenkins.getInstance().getLabelAtom("master"))));
+    assertFalse(expression.matches(ImmutableSet.of(
+        Jenkins.getInstance().getLabelAtom("master"),
+        Jenkins.getInstance().getLabelAtom("gpu"))));
+    // Compiled once.
+    assertSame(expression, Iterables.getOnlyElement(underTest.getLabels()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_invalidExpression() {
+    new ExecutorCheck(1, "master &&");
+  }
+
+  @Test
+  public void isExpression() {
+    assertFalse(ExecutorCheck.isExpression("linux-x64 docker"));
+    assertFalse(ExecutorCheck.isExpression(null));
+    assertTrue(ExecutorCheck.isExpression("linux||mac"));
+    assertTrue(ExecutorCheck.isExpression("!windows"));
+  }
+
+  @Test
+  public void perform_expression() {
+    int executors = jenkins.getInstance().getNumExecutors();
+    assertEquals(Result.SUCCESS,
+        new ExecutorCheck(executors, "master && !gpu").perform(taskListener));
+    assertEquals(Result.FAILURE,
+        new ExecutorCheck(1, "master && gpu").perform(taskListener));
+  }
+
+  @Test
+  public void doCheckLabelsSsv() {
+    ExecutorCheck.DescriptorImpl descriptor = underTest.getDescriptor();
+    assertEquals(FormValidation.Kind.OK,
+        descriptor.doCheckLabelsSsv("master slave").kind);
+    assertEquals(FormValidation.Kind.OK,
+        descriptor.doCheckLabelsSsv("master && !slave").kind);
+    assertEquals(FormValidation.Kind.ERROR,
+        descriptor.doCheckLabelsSsv("master && (").kind);
+  }
+
   @Test
   public void extension_registered() {
     ExecutorCheck.DescriptorImpl descriptor = (ExecutorCheck.DescriptorImpl)
@@ -15,19 +15,27 @@
  */
 package com.google.jenkins.plugins.health;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.List;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import org.acegisecurity.Authentication;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 import com.google.common.collect.ImmutableList;
 
@@ -68,6 +76,61 @@ public class HealthCheckActionTest {
     underTest.getTarget();
   }
 
+  @Test
+  public void doMetrics() throws Exception {
+    HealthZoneTest.Pessimist check = new HealthZoneTest.Pessimist();
+    HealthZone zone = new HealthZone(
+        "metered", ImmutableList.<HealthCheck>of(check));
+    underTest.getDerivedPageManager().setDerivedPages(ImmutableList.of(zone));
+    zone.refresh();
+
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    StringWriter out = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(out));
+    underTest.doMetrics(mock(StaplerRequest.class), mockResponse);
+
+    String labels = "zone=\"metered\",check=\"" + check + "\"";
+    assertThat(out.toString(),
+        containsString("jenkins_health_zone_success{zone=\"metered\"} 0\n"));
+    assertThat(out.toString(),
+        containsString("jenkins_health_check_success{" + labels + "} 0\n"));
+    assertThat(out.toString(),
+        containsString("jenkins_health_check_runs_total{" + labels + "} 1\n"));
+    assertThat(out.toString(), containsString(
+        "jenkins_health_check_duration_seconds_count{" + labels + "} 1\n"));
+  }
+
+  @Test
+  public void doMetrics_sameName() throws Exception {
+    ExecutorCheck first = new ExecutorCheck(0, "");
+    ExecutorCheck second = new ExecutorCheck(0, "");
+    HealthZone zone = new HealthZone("metered",
+        ImmutableList.<HealthCheck>of(first, new HealthZoneTest.Pessimist(),
+            second));
+    underTest.getDerivedPageManager().setDerivedPages(ImmutableList.of(zone));
+    zone.refresh();
+
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    StringWriter out = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(out));
+    underTest.doMetrics(mock(StaplerRequest.class), mockResponse);
+
+    String labels = "zone=\"metered\",check=\"" + first + "\"";
+    for (String index : ImmutableList.of("0", "2")) {
+      String indexed = labels + ",index=\"" + index + "\"";
+      assertThat(out.toString(), containsString(
+          "jenkins_health_check_runs_total{" + indexed + "} 1\n"));
+      assertThat(out.toString(), containsString(
+          "jenkins_health_check_duration_seconds_bucket{" + indexed
+          + ",le=\"+Inf\"} 1\n"));
+      assertThat(out.toString(), containsString(
+          "jenkins_health_check_duration_seconds_count{" + indexed
+          + "} 1\n"));
+    }
+    assertThat(out.toString(), not(containsString(
+        "jenkins_health_check_runs_total{" + labels + "}")));
+  }
+
   /** An {@link AuthorizationStrategy} that allows no one */
   private AuthorizationStrategy noneShallPass() {
     return new AuthorizationStrategy() {
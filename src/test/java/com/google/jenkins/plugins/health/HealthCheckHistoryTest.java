@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link HealthCheckHistory}.
+ */
+public class HealthCheckHistoryTest {
+  @Test
+  public void empty() {
+    HealthCheckHistory underTest = new HealthCheckHistory(3);
+    assertEquals(0, underTest.getSamples().size());
+    assertEquals(0, underTest.getSamples().getChanges());
+  }
+
+  @Test
+  public void record_keepsLatest() {
+    HealthCheckHistory underTest = new HealthCheckHistory(3);
+    underTest.record(1, Result.SUCCESS, TimeUnit.MICROSECONDS.toNanos(10));
+    underTest.record(2, Result.FAILURE, TimeUnit.MICROSECONDS.toNanos(20));
+    underTest.record(3, Result.SUCCESS, TimeUnit.MICROSECONDS.toNanos(30));
+    underTest.record(4, Result.UNSTABLE, TimeUnit.MICROSECONDS.toNanos(40));
+
+    HealthCheckHistory.Samples samples = underTest.getSamples();
+    assertEquals(3, samples.size());
+    assertArrayEquals(new long[] {2, 3, 4}, samples.getTimestamps());
+    assertArrayEquals(
+        new Result[] {Result.FAILURE, Result.SUCCESS, Result.UNSTABLE},
+        samples.getResults());
+    assertArrayEquals(new int[] {20, 30, 40}, samples.getLatencyMicros());
+    assertEquals(2, samples.getChanges());
+    assertEquals(Result.UNSTABLE, samples.getResult(2));
+  }
+
+  @Test
+  public void getSamples_isACopy() {
+    HealthCheckHistory underTest = new HealthCheckHistory(3);
+    underTest.record(1, Result.SUCCESS, 0);
+    HealthCheckHistory.Samples samples = underTest.getSamples();
+    underTest.record(2, Result.SUCCESS, 0);
+    assertEquals(1, samples.size());
+  }
+}
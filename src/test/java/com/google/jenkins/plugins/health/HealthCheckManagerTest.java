@@ -22,6 +22,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
@@ -115,4 +116,22 @@ public class HealthCheckManagerTest {
     assertThat(underTest.getZone("standard").getComponents(),
         empty());
   }
+
+  @Test
+  public void closeHistoryStore() throws IOException {
+    assertNotNull(underTest.getHistoryStore());
+    underTest.closeHistoryStore();
+    assertNull(underTest.getHistoryStore());
+  }
+
+  @Test
+  public void stopOnShutdown() throws IOException {
+    HealthCheckManager registered = jenkins.getInstance()
+        .getExtensionList(HealthCheckManager.class)
+        .get(HealthCheckManager.class);
+    assertNotNull(registered.getHistoryStore());
+
+    HealthCheckManager.stopOnShutdown();
+    assertNull(registered.getHistoryStore());
+  }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link HealthCheckStatistics}.
+ */
+public class HealthCheckStatisticsTest {
+  private HealthCheckStatistics underTest;
+
+  @Before
+  public void setup() {
+    underTest = new HealthCheckStatistics();
+  }
+
+  @Test
+  public void empty() {
+    assertEquals(0, underTest.getCount());
+    assertNull(underTest.getLastResult());
+    for (long bucket : underTest.getCumulativeBuckets()) {
+      assertEquals(0, bucket);
+    }
+  }
+
+  @Test
+  public void record() {
+    underTest.record(new HealthCheckReport(Result.SUCCESS, ""),
+        TimeUnit.MILLISECONDS.toNanos(1));
+    underTest.record(HealthCheckReport.timedOut(200, ""),
+        TimeUnit.SECONDS.toNanos(200));
+
+    assertEquals(2, underTest.getCount());
+    assertEquals(1, underTest.getFailures());
+    assertEquals(1, underTest.getTimeouts());
+    assertEquals(Result.FAILURE, underTest.getLastResult());
+    assertEquals(200.001, underTest.getTotalSeconds(), 1e-9);
+
+    long[] buckets = underTest.getCumulativeBuckets();
+    assertEquals(HealthCheckStatistics.getBucketBounds().length + 1,
+        buckets.length);
+    // The first bucket is 5ms, the slower one only shows in the last.
+    assertEquals(1, buckets[0]);
+    assertEquals(1, buckets[buckets.length - 2]);
+    assertEquals(2, buckets[buckets.length - 1]);
+  }
+}
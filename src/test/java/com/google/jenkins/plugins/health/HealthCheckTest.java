@@ -15,7 +15,18 @@
  */
 package com.google.jenkins.plugins.health;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Rule;
@@ -24,6 +35,11 @@ import org.junit.rules.ExpectedException;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.WithoutJenkins;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import hudson.model.Result;
+import hudson.model.TaskListener;
+
 /**
  * Unit tests for {@link HealthCheck}.
  */
@@ -43,4 +59,167 @@ public class HealthCheckTest {
     assertTrue(0 < HealthCheck.all().size());
   }
 
+
+  @Test @WithoutJenkins
+  public void timeout() {
+    Sleeper underTest = new Sleeper();
+    assertEquals(0, underTest.getTimeout());
+    underTest.setTimeout(5);
+    assertEquals(5, underTest.getTimeout());
+    underTest.setTimeout(-1);
+    assertEquals(0, underTest.getTimeout());
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_withinTimeout() {
+    HealthCheckReport report =
+        new HealthZoneTest.Optimist().performDerivation();
+    assertEquals(Result.SUCCESS, report.getResult());
+    assertFalse(report.isTimedOut());
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_timedOut() throws Exception {
+    Sleeper underTest = new Sleeper();
+    underTest.setTimeout(1);
+
+    HealthCheckReport report = underTest.performDerivation();
+    assertEquals(Result.FAILURE, report.getResult());
+    assertTrue(report.isTimedOut());
+    assertThat(report.getValue(), containsString("going to sleep"));
+    assertTrue(underTest.interrupted.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_timedOut_sameReport() throws Exception {
+    Sleeper underTest = new Sleeper();
+    underTest.setTimeout(1);
+
+    HealthCheckReport first = underTest.performDerivation();
+    assertTrue(underTest.interrupted.await(10, TimeUnit.SECONDS));
+    assertEquals(first, underTest.performDerivation());
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_waitingForThread_notTimedOut()
+      throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < HealthCheck.TIMEOUT_THREADS; i++) {
+      HealthCheck.getTimeoutExecutor().submit(new Runnable() {
+        @Override
+        public void run() {
+          Uninterruptibles.awaitUninterruptibly(release);
+        }
+      });
+    }
+    new Thread() {
+      @Override
+      public void run() {
+        Uninterruptibles.sleepUninterruptibly(1500, TimeUnit.MILLISECONDS);
+        release.countDown();
+      }
+    }.start();
+
+    // Queued for longer than its timeout, but runs well within it.
+    HealthZoneTest.Optimist underTest = new HealthZoneTest.Optimist();
+    underTest.setTimeout(1);
+    HealthCheckReport report = underTest.performDerivation();
+    assertFalse(report.isTimedOut());
+    assertEquals(Result.SUCCESS, report.getResult());
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_stillRunning_notRunAgain() throws Exception {
+    Stubborn underTest = new Stubborn();
+    underTest.setTimeout(1);
+    assertTrue(underTest.performDerivation().isTimedOut());
+
+    // Still stuck in the first run, so it is not run again.
+    assertTrue(underTest.performDerivation().isTimedOut());
+    assertEquals(1, underTest.runs.get());
+
+    underTest.release.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (underTest.performDerivation().isTimedOut()
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, underTest.runs.get());
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_silent() {
+    HealthZoneTest.Optimist underTest = new HealthZoneTest.Optimist();
+    underTest.setTimeout(0);
+    HealthCheckReport report = underTest.performDerivation();
+    assertEquals("", report.getValue());
+    assertThat(underTest.performDerivation(), sameInstance(report));
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_truncatesLog() {
+    Chatterbox underTest = new Chatterbox();
+    assertEquals(HealthCheck.DEFAULT_LOG_LIMIT, underTest.getLogLimit());
+    underTest.setLogLimit(1);
+    underTest.setTimeout(0);
+
+    String log = underTest.performDerivation().getValue();
+    assertThat(log, startsWith("line 0\n"));
+    assertThat(log, endsWith("line 9999\n"));
+    assertThat(log, containsString("bytes of log omitted"));
+    assertThat(log.length(), lessThan(1100));
+  }
+
+  @Test @WithoutJenkins
+  public void performDerivation_unlimitedLog() {
+    Chatterbox underTest = new Chatterbox();
+    underTest.setLogLimit(0);
+
+    String log = underTest.performDerivation().getValue();
+    assertThat(log, containsString("line 5000\n"));
+    assertFalse(log.contains("bytes of log omitted"));
+  }
+
+  /** A {@link HealthCheck} that logs a lot. */
+  static class Chatterbox extends HealthCheck {
+    /** {@inheritDoc} */
+    @Override
+    public Result perform(TaskListener taskListener) {
+      for (int i = 0; i < 10000; i++) {
+        taskListener.getLogger().print("line " + i + "\n");
+      }
+      return Result.SUCCESS;
+    }
+  }
+
+  /** A {@link HealthCheck} that ignores being interrupted until released. */
+  static class Stubborn extends HealthCheck {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger runs = new AtomicInteger();
+
+    /** {@inheritDoc} */
+    @Override
+    public Result perform(TaskListener taskListener) {
+      runs.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return Result.SUCCESS;
+    }
+  }
+
+  /** A {@link HealthCheck} that never completes unless interrupted. */
+  static class Sleeper extends HealthCheck {
+    final CountDownLatch interrupted = new CountDownLatch(1);
+
+    /** {@inheritDoc} */
+    @Override
+    public Result perform(TaskListener taskListener) {
+      taskListener.getLogger().println("going to sleep");
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return Result.SUCCESS;
+    }
+  }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link HealthHistoryStore}.
+ */
+public class HealthHistoryStoreTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private HealthHistoryStore underTest;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new File(folder.getRoot(), "history");
+    underTest = new HealthHistoryStore(directory, 1024, 2);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    underTest.close();
+  }
+
+  /**
+   * Collects what a scan visits, as "zone/check/result/latency".
+   */
+  private static class Collector implements HealthHistoryStore.Visitor {
+    private final List<String> visited = Lists.newArrayList();
+    private final List<Long> timestamps = Lists.newArrayList();
+
+    @Override
+    public boolean visit(String zone, String check, long timestamp,
+        Result result, int latencyMicros) {
+      visited.add(zone + "/" + check + "/" + result + "/" + latencyMicros);
+      timestamps.add(timestamp);
+      return true;
+    }
+  }
+
+  private Collector scanAll() {
+    Collector collector = new Collector();
+    underTest.scan(0, Long.MAX_VALUE, collector);
+    return collector;
+  }
+
+  @Test
+  public void empty() {
+    assertEquals(0, scanAll().visited.size());
+  }
+
+  @Test
+  public void append_scan() throws IOException {
+    underTest.append("a", "x", Result.SUCCESS,
+        TimeUnit.MICROSECONDS.toNanos(10));
+    underTest.append("b", "y", Result.FAILURE,
+        TimeUnit.MICROSECONDS.toNanos(20));
+
+    Collector collector = scanAll();
+    assertEquals(Lists.newArrayList("a/x/SUCCESS/10", "b/y/FAILURE/20"),
+        collector.visited);
+    assertTrue(collector.timestamps.get(0) <= collector.timestamps.get(1));
+  }
+
+  @Test
+  public void survivesReopening() throws IOException {
+    underTest.append("a", "x", Result.SUCCESS, 0);
+    underTest.close();
+    underTest = new HealthHistoryStore(directory, 1024, 2);
+    underTest.append("a", "x", Result.UNSTABLE, 0);
+    underTest.append("a", "z", Result.FAILURE, 0);
+
+    assertEquals(
+        Lists.newArrayList("a/x/SUCCESS/0", "a/x/UNSTABLE/0", "a/z/FAILURE/0"),
+        scanAll().visited);
+  }
+
+  @Test
+  public void survivesPartialName() throws IOException {
+    underTest.append("a", "x", Result.SUCCESS, 0);
+    underTest.close();
+    // As if the store crashed after writing only the zone of a new pair.
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(
+        new File(directory, "names.bin"), true));
+    out.writeUTF("partial");
+    out.close();
+
+    underTest = new HealthHistoryStore(directory, 1024, 2);
+    underTest.append("b", "y", Result.FAILURE, 0);
+    underTest.close();
+    underTest = new HealthHistoryStore(directory, 1024, 2);
+
+    assertEquals(Lists.newArrayList("a/x/SUCCESS/0", "b/y/FAILURE/0"),
+        scanAll().visited);
+  }
+
+  @Test
+  public void append_closed() throws IOException {
+    underTest.append("a", "x", Result.SUCCESS, 0);
+    underTest.close();
+    underTest.append("a", "x", Result.FAILURE, 0);
+    underTest.append("b", "y", Result.FAILURE, 0);
+    underTest = new HealthHistoryStore(directory, 1024, 2);
+
+    assertEquals(Lists.newArrayList("a/x/SUCCESS/0"), scanAll().visited);
+  }
+
+  @Test
+  public void rotatesAndRetains() throws IOException {
+    // (1024 - 16) / 20 = 50 records per segment, and two segments kept.
+    for (int i = 0; i < 120; i++) {
+      underTest.append("a", "x", Result.SUCCESS,
+          TimeUnit.MICROSECONDS.toNanos(i));
+    }
+
+    List<String> visited = scanAll().visited;
+    assertEquals(70, visited.size());
+    assertEquals("a/x/SUCCESS/50", visited.get(0));
+    assertEquals("a/x/SUCCESS/119", visited.get(69));
+    assertEquals(2, directory.list().length - 1 /* names */);
+  }
+
+  @Test
+  public void scan_range() throws IOException {
+    underTest.append("a", "x", Result.SUCCESS, 0);
+    long after = scanAll().timestamps.get(0) + 1;
+    while (System.currentTimeMillis() < after) {
+      Thread.yield();
+    }
+    underTest.append("a", "x", Result.FAILURE, 0);
+
+    Collector collector = new Collector();
+    underTest.scan(after, Long.MAX_VALUE, collector);
+    assertEquals(Lists.newArrayList("a/x/FAILURE/0"), collector.visited);
+
+    collector = new Collector();
+    underTest.scan(0, after - 1, collector);
+    assertEquals(Lists.newArrayList("a/x/SUCCESS/0"), collector.visited);
+  }
+
+  @Test
+  public void scan_stops() throws IOException {
+    underTest.append("a", "x", Result.SUCCESS, 0);
+    underTest.append("a", "x", Result.FAILURE, 0);
+    final List<Result> visited = Lists.newArrayList();
+    underTest.scan(0, Long.MAX_VALUE, new HealthHistoryStore.Visitor() {
+      @Override
+      public boolean visit(String zone, String check, long timestamp,
+          Result result, int latencyMicros) {
+        visited.add(result);
+        return false;
+      }
+    });
+    assertEquals(Lists.newArrayList(Result.SUCCESS), visited);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link HealthZoneAvailability}.
+ */
+public class HealthZoneAvailabilityTest {
+  private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  // Aligned on every bucket width, to keep the arithmetic simple.
+  private static final long START = TimeUnit.DAYS.toMillis(30) * 1000;
+
+  private final HealthZoneAvailability underTest =
+      new HealthZoneAvailability();
+
+  private HealthZoneAvailability.Window get(
+      HealthZoneAvailability.Period period, long now) {
+    return underTest.getWindows(now).get(period.ordinal());
+  }
+
+  @Test
+  public void empty() {
+    HealthZoneAvailability.Window hour =
+        get(HealthZoneAvailability.Period.HOUR, START);
+    assertEquals(0, hour.getEvaluations());
+    assertNull(hour.getSuccessRatio());
+    assertNull(hour.getUptime());
+  }
+
+  @Test
+  public void successRatio_andUptime() {
+    underTest.record(START, Result.SUCCESS);
+    underTest.record(START + 10 * MINUTE, Result.FAILURE);
+    underTest.record(START + 20 * MINUTE, Result.SUCCESS);
+    underTest.record(START + 30 * MINUTE, Result.SUCCESS);
+
+    HealthZoneAvailability.Window hour =
+        get(HealthZoneAvailability.Period.HOUR, START + 30 * MINUTE);
+    assertEquals(4, hour.getEvaluations());
+    assertEquals(3, hour.getSuccesses());
+    assertEquals(0.75, hour.getSuccessRatio(), 0.0);
+    assertEquals(30 * MINUTE, hour.getObservedMillis());
+    assertEquals(10 * MINUTE, hour.getFailingMillis());
+    assertEquals(2.0 / 3, hour.getUptime(), 1e-9);
+  }
+
+  @Test
+  public void ongoingFailure_counts() {
+    underTest.record(START, Result.FAILURE);
+
+    HealthZoneAvailability.Window hour =
+        get(HealthZoneAvailability.Period.HOUR, START + 5 * MINUTE);
+    assertEquals(5 * MINUTE, hour.getObservedMillis());
+    assertEquals(5 * MINUTE, hour.getFailingMillis());
+    assertEquals(0.0, hour.getUptime(), 0.0);
+  }
+
+  @Test
+  public void getWindows_agesWithClock() {
+    // No longer evaluated since two hours ago.
+    long then = System.currentTimeMillis() - 2 * HOUR;
+    underTest.record(then - 5 * MINUTE, Result.FAILURE);
+    underTest.record(then, Result.FAILURE);
+
+    HealthZoneAvailability.Window hour = underTest.getWindows().get(
+        HealthZoneAvailability.Period.HOUR.ordinal());
+    assertEquals(0, hour.getEvaluations());
+    assertEquals(HOUR, hour.getObservedMillis());
+    assertEquals(HOUR, hour.getFailingMillis());
+    HealthZoneAvailability.Window day = underTest.getWindows().get(
+        HealthZoneAvailability.Period.DAY.ordinal());
+    assertEquals(2, day.getEvaluations());
+  }
+
+  @Test
+  public void oldBuckets_expire() {
+    underTest.record(START, Result.FAILURE);
+    underTest.record(START + 10 * MINUTE, Result.SUCCESS);
+    underTest.record(START + 3 * HOUR, Result.SUCCESS);
+
+    long now = START + 3 * HOUR;
+    HealthZoneAvailability.Window hour =
+        get(HealthZoneAvailability.Period.HOUR, now);
+    assertEquals(1, hour.getEvaluations());
+    assertEquals(0, hour.getFailingMillis());
+    assertEquals(1.0, hour.getUptime(), 0.0);
+
+    HealthZoneAvailability.Window day =
+        get(HealthZoneAvailability.Period.DAY, now);
+    assertEquals(3, day.getEvaluations());
+    assertEquals(10 * MINUTE, day.getFailingMillis());
+    assertEquals(3 * HOUR, day.getObservedMillis());
+  }
+
+  @Test
+  public void longSilence_emptiesEverything() {
+    underTest.record(START, Result.FAILURE);
+    List<HealthZoneAvailability.Window> windows =
+        underTest.getWindows(START + TimeUnit.DAYS.toMillis(60));
+    for (HealthZoneAvailability.Window window : windows) {
+      assertEquals(0, window.getEvaluations());
+      assertEquals(window.getPeriod().getMillis(), window.getFailingMillis());
+    }
+  }
+}
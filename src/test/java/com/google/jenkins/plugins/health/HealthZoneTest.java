@@ -16,18 +16,33 @@
 package com.google.jenkins.plugins.health;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.ServletOutputStream;
+
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -36,7 +51,10 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.jenkins.plugins.health.lib.ConditionalApi;
+import com.google.jenkins.plugins.health.lib.DerivedPageJsonWriter;
 
 import hudson.Extension;
 import hudson.model.Descriptor;
@@ -112,6 +130,100 @@ public class HealthZoneTest {
     assertEquals(Result.FAILURE, underTest.getCombinedResult());
   }
 
+  @Test
+  public void getCombinedReport_rendersLazily() {
+    Pessimist pessimist = new Pessimist();
+    underTest = new HealthZone("under-test",
+        ImmutableList.<HealthCheck>of(pessimist, new Optimist()));
+    HealthZone.CombinedReport report =
+        (HealthZone.CombinedReport) underTest.getCombinedReport();
+    assertEquals(Result.FAILURE, report.getResult());
+    assertFalse(report.isRendered());
+    assertThat(underTest.getCombinedReport(), sameInstance(
+        (HealthCheckReport) report));
+
+    assertThat(report.getValue(), containsString(
+        "[FAILURE]: '" + pessimist + "' due to:"));
+    assertTrue(report.isRendered());
+
+    underTest.refresh();
+    assertThat(underTest.getCombinedReport(), not(sameInstance(
+        (HealthCheckReport) report)));
+  }
+
+  @Test
+  public void getHistory() {
+    Pessimist pessimist = new Pessimist();
+    underTest = new HealthZone(
+        "under-test", ImmutableList.<HealthCheck>of(pessimist));
+    underTest.refresh();
+    underTest.refresh();
+
+    ZoneHistory history = underTest.getHistory();
+    assertEquals(1, history.getChecks().size());
+    ZoneHistory.CheckHistory check = history.getChecks().get(0);
+    assertEquals(pessimist.toString(), check.getName());
+    assertEquals(2, check.getTimestamps().length);
+    assertEquals(Result.FAILURE, check.getResults()[1]);
+    assertEquals(0, check.getChanges());
+  }
+
+  @Test
+  public void history_page() throws Exception {
+    underTest = new HealthZone(
+        "paged", ImmutableList.<HealthCheck>of(new Pessimist()));
+    underTest.getHealthCheckManager().setDerivedPages(
+        ImmutableList.of(underTest));
+    underTest.refresh();
+
+    jenkins.createWebClient().goTo("health/zone/paged/history/");
+    jenkins.createWebClient().goTo("health/zone/paged/history/api/json",
+        "application/json");
+  }
+
+  @Test
+  public void history_page_notEvaluated() throws Exception {
+    underTest = new HealthZone(
+        "unseen", ImmutableList.<HealthCheck>of(new Pessimist()));
+    // Evaluated on demand only, so that nothing evaluates it meanwhile.
+    underTest.setRefreshInterval(0);
+    underTest.getHealthCheckManager().setDerivedPages(
+        ImmutableList.of(underTest));
+
+    String page = jenkins.createWebClient().goTo("health/zone/unseen/history/")
+        .getWebResponse().getContentAsString();
+    assertThat(page, containsString("Not evaluated yet."));
+  }
+
+  @Test
+  public void history_range() throws Exception {
+    underTest = new HealthZone(
+        "ranged", ImmutableList.<HealthCheck>of(new Pessimist()));
+    underTest.refresh();
+    new HealthZone("other", ImmutableList.<HealthCheck>of(new Optimist()))
+        .refresh();
+
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    StringWriter output = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(output));
+    underTest.getHistory().doRange(null, mockResponse, null, null);
+
+    String json = output.toString();
+    assertThat(json, containsString("\"result\":\"FAILURE\""));
+    assertThat(json, not(containsString("SUCCESS")));
+    assertThat(json, containsString("\"truncated\":false"));
+  }
+
+  @Test
+  public void history_range_badRequest() throws Exception {
+    underTest = new HealthZone(
+        "ranged", ImmutableList.<HealthCheck>of(new Pessimist()));
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    underTest.getHistory().doRange(null, mockResponse, "soon", null);
+    verify(mockResponse).sendError(eq(StaplerResponse.SC_BAD_REQUEST),
+        anyString());
+  }
+
   @Test
   public void api_not_error() throws IOException {
     underTest = new HealthZone(
@@ -119,6 +231,116 @@ public class HealthZoneTest {
     assertThat(underTest.getApi(), not(instanceOf(HealthZone.ErrorApi.class)));
   }
 
+  @Test
+  public void api_etag_sameAcrossEvaluations() {
+    underTest = new HealthZone(
+        "under-test", ImmutableList.<HealthCheck>of(new Optimist()));
+    long minute = currentMinute();
+    underTest.refresh();
+    String etag = ((ConditionalApi) underTest.getApi()).getETag();
+
+    // The same report again.
+    underTest.refresh();
+    String again = ((ConditionalApi) underTest.getApi()).getETag();
+    // Unless the availability aged meanwhile.
+    assumeTrue(minute == currentMinute());
+    assertEquals(etag, again);
+  }
+
+  private static long currentMinute() {
+    return System.currentTimeMillis()
+        / HealthZoneAvailability.RESOLUTION_MILLIS;
+  }
+
+  @Test
+  public void doStatus_success() throws IOException {
+    underTest = new HealthZone(
+        "under-test", ImmutableList.<HealthCheck>of(new Optimist()));
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    ServletOutputStream mockStream = mock(ServletOutputStream.class);
+    when(mockResponse.getOutputStream()).thenReturn(mockStream);
+
+    underTest.doStatus((StaplerRequest) null, mockResponse);
+    verify(mockResponse).setStatus(StaplerResponse.SC_OK);
+    verify(mockStream).write("SUCCESS\n".getBytes(Charsets.UTF_8));
+  }
+
+  @Test
+  public void doStatus_failure() throws IOException {
+    underTest = new HealthZone(
+        "under-test", ImmutableList.<HealthCheck>of(new Pessimist()));
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    ServletOutputStream mockStream = mock(ServletOutputStream.class);
+    when(mockResponse.getOutputStream()).thenReturn(mockStream);
+
+    underTest.doStatus((StaplerRequest) null, mockResponse);
+    verify(mockResponse).setStatus(StaplerResponse.SC_SERVICE_UNAVAILABLE);
+    verify(mockStream).write("FAILURE\n".getBytes(Charsets.UTF_8));
+  }
+
+  @Test
+  public void api_evaluatesOncePerRequest() throws Exception {
+    Counter counter = new Counter();
+    underTest = new HealthZone(
+        "on-demand", ImmutableList.<HealthCheck>of(counter));
+    underTest.setRefreshInterval(0);
+    underTest.getHealthCheckManager().setDerivedPages(
+        ImmutableList.of(underTest));
+
+    jenkins.createWebClient().goTo("health/zone/on-demand/api/json",
+        "application/json");
+    assertEquals(1, counter.count.get());
+
+    jenkins.createWebClient().goTo("health/");
+    assertEquals(2, counter.count.get());
+  }
+
+  @Test
+  public void writeJson() throws IOException {
+    Optimist check = new Optimist();
+    underTest = new HealthZone(
+        "under-test", ImmutableList.<HealthCheck>of(check));
+    StringWriter out = new StringWriter();
+    underTest.writeJson(new DerivedPageJsonWriter(out));
+
+    assertThat(out.toString(), startsWith("{\"reports\":{\"" + check
+        + "\":{\"result\":\"SUCCESS\",\"value\":\""));
+    assertThat(out.toString(), containsString("\",\"timedOut\":false}},"
+        + "\"availability\":[{\"period\":\"HOUR\",\"evaluations\":1,"
+        + "\"successes\":1,\"successRatio\":1.0,"));
+    assertThat(out.toString(), endsWith("}]}"));
+  }
+
+  @Test
+  public void getAvailability() {
+    underTest = new HealthZone(
+        "under-test", ImmutableList.<HealthCheck>of(new Pessimist()));
+    underTest.refresh();
+    underTest.refresh();
+
+    List<HealthZoneAvailability.Window> windows = underTest.getAvailability();
+    assertEquals(HealthZoneAvailability.Period.values().length,
+        windows.size());
+    for (HealthZoneAvailability.Window window : windows) {
+      assertEquals(2, window.getEvaluations());
+      assertEquals(Double.valueOf(0), window.getSuccessRatio());
+    }
+  }
+
+  @Test
+  public void api_streamsJson() throws Exception {
+    Optimist check = new Optimist();
+    underTest = new HealthZone(
+        "streamed", ImmutableList.<HealthCheck>of(check));
+    underTest.getHealthCheckManager().setDerivedPages(
+        ImmutableList.of(underTest));
+
+    String json = jenkins.createWebClient().goTo(
+        "health/zone/streamed/api/json", "application/json")
+        .getWebResponse().getContentAsString();
+    assertThat(json, startsWith("{\"reports\":{\"" + check + "\":"));
+  }
+
   /** A {link @HealthCheck} that always fail.  */
   static class Pessimist extends HealthCheck {
     /** {@inheritDoc} */
@@ -138,6 +360,28 @@ public class HealthZoneTest {
 
   }
 
+  /** A {link @HealthCheck} that counts how often it is performed.  */
+  static class Counter extends HealthCheck {
+    final AtomicInteger count = new AtomicInteger();
+
+    /** {@inheritDoc} */
+    @Override
+    public Result perform(TaskListener taskListener) {
+      count.incrementAndGet();
+      return Result.SUCCESS;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<HealthCheck> {
+      /** {@inheritDoc} */
+      @Override
+      public String getDisplayName() {
+        return "Counter";
+      }
+    }
+
+  }
+
   /** A {link @HealthCheck} that always succeed.  */
   static class Optimist extends HealthCheck {
     /** {@inheritDoc} */
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health;
+
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+/**
+ * Unit test for {@link LogCapture}.
+ */
+public class LogCaptureTest {
+  @Test
+  public void reusedOnceReleased() {
+    LogCapture first = LogCapture.acquire(0);
+    first.getListener().getLogger().print("hello");
+    assertEquals("hello", first.getLog());
+    first.release(true);
+
+    LogCapture second = LogCapture.acquire(0);
+    assertThat(second, sameInstance(first));
+    assertThat(second.getLog(), sameInstance(""));
+    second.release(true);
+  }
+
+  @Test
+  public void notSharedWhileInUse() {
+    LogCapture outer = LogCapture.acquire(0);
+    LogCapture inner = LogCapture.acquire(0);
+    assertThat(inner, not(sameInstance(outer)));
+    inner.getListener().getLogger().print("inner");
+    assertEquals("", outer.getLog());
+    inner.release(true);
+    outer.release(true);
+
+    LogCapture next = LogCapture.acquire(0);
+    assertThat(next, sameInstance(outer));
+    next.release(true);
+  }
+
+  @Test
+  public void notReusedIfAbandoned() {
+    LogCapture abandoned = LogCapture.acquire(0);
+    abandoned.release(false);
+
+    LogCapture next = LogCapture.acquire(0);
+    assertThat(next, not(sameInstance(abandoned)));
+    next.release(true);
+  }
+
+  @Test
+  public void notReusedIfGrownLarge() {
+    LogCapture large = LogCapture.acquire(0);
+    large.getListener().getLogger().print(
+        Strings.repeat("x", LogCapture.RETAINED_LIMIT + 1));
+    large.getLog();
+    large.release(true);
+
+    LogCapture next = LogCapture.acquire(0);
+    assertThat(next, not(sameInstance(large)));
+    next.release(true);
+  }
+}
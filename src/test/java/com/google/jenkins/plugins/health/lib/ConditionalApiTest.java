@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Flavor;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link ConditionalApi}.
+ */
+public class ConditionalApiTest {
+  private final Object bean = new Object();
+  private ConditionalApi underTest;
+  private StaplerRequest mockRequest;
+  private StaplerResponse mockResponse;
+
+  @Before
+  public void setup() {
+    underTest = new ConditionalApi(bean, 42);
+    mockRequest = mock(StaplerRequest.class);
+    mockResponse = mock(StaplerResponse.class);
+  }
+
+  @Test
+  public void getETag() {
+    assertEquals("\"42\"", underTest.getETag());
+    assertEquals(underTest.getETag(), ConditionalApi.toETag(42));
+    assertEquals("\"42.7\"", ConditionalApi.toETag(42, 7));
+  }
+
+  @Test
+  public void doJson_unconditional() throws Exception {
+    underTest.doJson(mockRequest, mockResponse);
+    verify(mockResponse).setHeader("ETag", "\"42\"");
+    verify(mockResponse, never()).setStatus(StaplerResponse.SC_NOT_MODIFIED);
+    verify(mockResponse).serveExposedBean(
+        eq(mockRequest), eq(bean), any(Flavor.class));
+  }
+
+  @Test
+  public void doJson_notModified() throws Exception {
+    when(mockRequest.getHeader("If-None-Match")).thenReturn("\"7\", W/\"42\"");
+    underTest.doJson(mockRequest, mockResponse);
+    verify(mockResponse).setStatus(StaplerResponse.SC_NOT_MODIFIED);
+    verify(mockResponse, never()).serveExposedBean(
+        any(StaplerRequest.class), any(), any(Flavor.class));
+  }
+
+  @Test
+  public void doJson_modified() throws Exception {
+    when(mockRequest.getHeader("If-None-Match")).thenReturn("\"41\"");
+    underTest.doJson(mockRequest, mockResponse);
+    verify(mockResponse, never()).setStatus(StaplerResponse.SC_NOT_MODIFIED);
+    verify(mockResponse).serveExposedBean(
+        eq(mockRequest), eq(bean), any(Flavor.class));
+  }
+
+  @Test
+  public void doXml_notModified() throws Exception {
+    when(mockRequest.getHeader("If-None-Match")).thenReturn("\"42\"");
+    underTest.doXml(mockRequest, mockResponse, null, null, null, 0);
+    verify(mockResponse).setStatus(StaplerResponse.SC_NOT_MODIFIED);
+  }
+
+  @Test
+  public void doJson_streamsExportable() throws Exception {
+    StringWriter out = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(out));
+    underTest = new ConditionalApi(
+        new DerivedPageComponentReport<String>(Result.SUCCESS, "ok"), 42);
+
+    underTest.doJson(mockRequest, mockResponse);
+    verify(mockResponse).setContentType("application/json;charset=UTF-8");
+    verify(mockResponse, never()).serveExposedBean(
+        any(StaplerRequest.class), any(), any(Flavor.class));
+    assertEquals("{\"result\":\"SUCCESS\",\"value\":\"ok\"}",
+        out.toString());
+  }
+
+  @Test
+  public void doJson_treeUsesExport() throws Exception {
+    Object report = new DerivedPageComponentReport<String>(
+        Result.SUCCESS, "ok");
+    when(mockRequest.getParameter("tree")).thenReturn("result");
+    underTest = new ConditionalApi(report, 42);
+
+    underTest.doJson(mockRequest, mockResponse);
+    verify(mockResponse).serveExposedBean(
+        eq(mockRequest), eq(report), any(Flavor.class));
+  }
+}
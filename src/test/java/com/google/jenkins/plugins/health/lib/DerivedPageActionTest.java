@@ -15,22 +15,34 @@
  */
 package com.google.jenkins.plugins.health.lib;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.List;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 import org.acegisecurity.Authentication;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 import com.google.common.collect.ImmutableList;
 import com.google.jenkins.plugins.health.lib.DerivedPageManagerTest.MockDerivedPageManager;
+import com.google.jenkins.plugins.health.lib.DerivedPageZoneTest.CountingComponent;
+import com.google.jenkins.plugins.health.lib.DerivedPageZoneTest.NamedDerivedPageZone;
 
 import hudson.ExtensionList;
 import hudson.security.ACL;
@@ -101,6 +113,61 @@ public class DerivedPageActionTest {
     underTest.getTarget();
   }
 
+  @Test(expected = HttpResponses.HttpResponseException.class)
+  public void getTarget_starting() throws Exception {
+    fakeManager = spy(new MockDerivedPageManager());
+    doReturn(true).when(fakeManager).isStarting();
+    underTest.getTarget();
+  }
+
+  @Test
+  public void doEvents() throws Exception {
+    NamedDerivedPageZone zone = new NamedDerivedPageZone("watched",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(new CountingComponent()));
+    zone.setRefreshInterval(0);
+    fakeManager.setDerivedPages(ImmutableList.of(zone));
+    zone.refresh();
+
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    StringWriter out = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(out));
+    underTest.doEvents(mock(StaplerRequest.class), mockResponse, "0", "0");
+
+    assertThat(out.toString(), containsString(
+        "{\"sequence\":2,\"gap\":false,\"transitions\":[{\"sequence\":1,"
+        + "\"zone\":\"watched\",\"component\":null,"
+        + "\"previous\":null,\"result\":\"SUCCESS\""));
+  }
+
+  @Test
+  public void doBatch() throws Exception {
+    CountingComponent first = new CountingComponent();
+    CountingComponent second = new CountingComponent();
+    NamedDerivedPageZone a = new NamedDerivedPageZone("a",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(first));
+    NamedDerivedPageZone b = new NamedDerivedPageZone("b",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(second));
+    a.setRefreshInterval(0);
+    b.setRefreshInterval(0);
+    fakeManager.setDerivedPages(ImmutableList.of(a, b));
+
+    StaplerResponse mockResponse = mock(StaplerResponse.class);
+    StringWriter out = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(out));
+    underTest.doBatch(mock(StaplerRequest.class), mockResponse, "b, a,x,a");
+
+    assertEquals("{\"result\":\"SUCCESS\",\"zones\":{"
+        + "\"b\":{\"result\":\"SUCCESS\",\"reports\":{\"" + second
+        + "\":{\"result\":\"SUCCESS\",\"value\":\"1\"}}},"
+        + "\"a\":{\"result\":\"SUCCESS\",\"reports\":{\"" + first
+        + "\":{\"result\":\"SUCCESS\",\"value\":\"1\"}}},"
+        + "\"x\":null}}", out.toString());
+    assertEquals(1, first.count.get());
+  }
+
   /** An {@link AuthorizationStrategy} that allows no one */
   private AuthorizationStrategy noneShallPass() {
     return new AuthorizationStrategy() {
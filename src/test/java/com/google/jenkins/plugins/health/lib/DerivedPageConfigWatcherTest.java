@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Unit test for {@link DerivedPageConfigWatcher}.
+ */
+public class DerivedPageConfigWatcherTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicInteger reloads = new AtomicInteger();
+  private File file;
+  private DerivedPageConfigWatcher underTest;
+
+  @Before
+  public void setUp() throws IOException {
+    file = folder.newFile("config.xml");
+    Files.write("<first/>", file, Charsets.UTF_8);
+    underTest = new DerivedPageConfigWatcher(file, new Runnable() {
+      @Override
+      public void run() {
+        reloads.incrementAndGet();
+      }
+    });
+    underTest.acknowledge();
+  }
+
+  @Test
+  public void unchanged_noReload() {
+    underTest.poll();
+    underTest.poll();
+    assertEquals(0, reloads.get());
+  }
+
+  @Test
+  public void changed_reloadsOnceStable() throws IOException {
+    Files.write("<second/>", file, Charsets.UTF_8);
+    underTest.poll();
+    assertEquals(0, reloads.get());
+
+    underTest.poll();
+    assertEquals(1, reloads.get());
+
+    underTest.poll();
+    assertEquals(1, reloads.get());
+  }
+
+  @Test
+  public void burstOfWrites_debounced() throws IOException {
+    Files.write("<second/>", file, Charsets.UTF_8);
+    underTest.poll();
+    Files.write("<third and longer/>", file, Charsets.UTF_8);
+    underTest.poll();
+    assertEquals(0, reloads.get());
+
+    underTest.poll();
+    assertEquals(1, reloads.get());
+  }
+
+  @Test
+  public void acknowledged_noReload() throws IOException {
+    Files.write("<second/>", file, Charsets.UTF_8);
+    underTest.acknowledge();
+    underTest.poll();
+    underTest.poll();
+    assertEquals(0, reloads.get());
+  }
+
+  @Test
+  public void deleted_noReload() {
+    file.delete();
+    underTest.poll();
+    underTest.poll();
+    assertEquals(0, reloads.get());
+  }
+
+  @Test
+  public void stop() {
+    underTest.start();
+    assertTrue(underTest.isStarted());
+
+    underTest.stop();
+    assertFalse(underTest.isStarted());
+  }
+}
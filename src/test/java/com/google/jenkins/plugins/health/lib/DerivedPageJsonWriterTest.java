@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link DerivedPageJsonWriter}.
+ */
+public class DerivedPageJsonWriterTest {
+  private StringWriter out;
+  private DerivedPageJsonWriter underTest;
+
+  @Before
+  public void setup() {
+    out = new StringWriter();
+    underTest = new DerivedPageJsonWriter(out);
+  }
+
+  @Test
+  public void nesting() throws IOException {
+    underTest.beginObject()
+        .name("a").value(1L)
+        .name("b").beginArray().value(true).nullValue().beginObject()
+            .endObject().endArray()
+        .name("c").value("d")
+        .endObject();
+    assertEquals("{\"a\":1,\"b\":[true,null,{}],\"c\":\"d\"}", out.toString());
+  }
+
+  @Test
+  public void escaping() throws IOException {
+    underTest.value("q\"b\\n\nt\tc\u0001l\u2028e\u00e9");
+    assertEquals("\"q\\\"b\\\\n\\nt\\tc\\u0001l\\u2028e\u00e9\"",
+        out.toString());
+  }
+
+  @Test
+  public void value_object() throws IOException {
+    underTest.beginArray().value((Object) 3).value((Object) Double.NaN)
+        .value((Object) Boolean.FALSE).value((Object) Result.UNSTABLE)
+        .endArray();
+    assertEquals("[3,\"NaN\",false,\"UNSTABLE\"]", out.toString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void name_outsideObject() throws IOException {
+    underTest.name("a");
+  }
+
+  @Test
+  public void report() throws IOException {
+    new DerivedPageComponentReport<String>(Result.SUCCESS, "ok")
+        .writeJson(underTest);
+    assertEquals("{\"result\":\"SUCCESS\",\"value\":\"ok\"}", out.toString());
+  }
+}
@@ -15,14 +15,19 @@
  */
 package com.google.jenkins.plugins.health.lib;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -33,8 +38,10 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.kohsuke.stapler.StaplerRequest;
 
 import static com.google.jenkins.plugins.health.lib.DerivedPageZoneTest.NamedDerivedPageZone;
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
 
 import hudson.ExtensionList;
 import jenkins.model.Jenkins;
@@ -128,6 +135,119 @@ public class DerivedPageManagerTest {
     assertEquals(2, extracted.getValue().intValue());
   }
 
+  @Test
+  public void loadInBackground() throws Exception {
+    FakeComponent fakeComponent = new FakeComponent(3);
+    underTest.setDerivedPages(ImmutableList.of(new NamedDerivedPageZone(
+        "some-zone",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(fakeComponent))));
+    underTest.save();
+
+    underTest = new MockDerivedPageManager();
+    assertFalse(underTest.isStarting());
+    underTest.loadInBackground();
+    while (underTest.isStarting()) {
+      // Nothing is known until the configuration is loaded.
+      Thread.sleep(10);
+    }
+    assertEquals(1, underTest.getDerivedPages().size());
+    assertNotNull(underTest.getZone("some-zone"));
+  }
+
+  @Test
+  public void setDerivedPages_beforeLoading_wins() throws IOException {
+    underTest.setDerivedPages(ImmutableList.of(new NamedDerivedPageZone(
+        "some-zone", ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of())));
+    underTest.save();
+
+    underTest = new MockDerivedPageManager();
+    underTest.setDerivedPages(ImmutableList.<NamedDerivedPageZone>of());
+    underTest.load();
+    assertThat(underTest.getDerivedPages(), empty());
+  }
+
+  @Test
+  public void reload() throws IOException {
+    FakeComponent kept = new FakeComponent(1);
+    NamedDerivedPageZone zone = new NamedDerivedPageZone("kept",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(kept));
+    underTest.setDerivedPages(ImmutableList.of(zone));
+    underTest.save();
+
+    // As if configuration management rewrote the file.
+    MockDerivedPageManager other = new MockDerivedPageManager();
+    other.setDerivedPages(ImmutableList.of(
+        new NamedDerivedPageZone("kept",
+            ImmutableList.<DerivedPageComponent<
+                DerivedPageComponentReport<String>>>of(new FakeComponent(1))),
+        new NamedDerivedPageZone("added",
+            ImmutableList.<DerivedPageComponent<
+                DerivedPageComponentReport<String>>>of())));
+    other.save();
+
+    underTest.reload();
+    assertEquals(2, underTest.getDerivedPages().size());
+    assertSame(zone, underTest.getZone("kept"));
+    assertNotNull(underTest.getZone("added"));
+  }
+
+  @Test
+  public void reload_unreadable_keepsCurrent() throws IOException {
+    NamedDerivedPageZone zone = new NamedDerivedPageZone("kept",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of());
+    underTest.setDerivedPages(ImmutableList.of(zone));
+    Files.write("<not-even-xml", new File(jenkins.getInstance().getRootDir(),
+        underTest.getConfigFileName()), Charsets.UTF_8);
+
+    underTest.reload();
+    assertEquals(ImmutableList.of(zone), underTest.getDerivedPages());
+  }
+
+  @Test
+  public void load_unreadable_refusesToSave() throws IOException {
+    File file = new File(jenkins.getInstance().getRootDir(),
+        underTest.getConfigFileName());
+    Files.write("<not-even-xml", file, Charsets.UTF_8);
+
+    underTest = new MockDerivedPageManager();
+    underTest.load();
+    assertNotNull(underTest.getLoadFailure());
+    try {
+      underTest.save();
+      fail();
+    } catch (IOException expected) {
+      assertEquals("<not-even-xml", Files.toString(file, Charsets.UTF_8));
+    }
+
+    // Saving is fine again once the file is out of the way.
+    assertTrue(file.delete());
+    underTest.save();
+  }
+
+  @Test
+  public void setDerivedPages_keepsOrder() {
+    NamedDerivedPageZone first = new NamedDerivedPageZone("zebra",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of());
+    NamedDerivedPageZone second = new NamedDerivedPageZone("aardvark",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of());
+    NamedDerivedPageZone replacement = new NamedDerivedPageZone("zebra",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of());
+
+    underTest.setDerivedPages(ImmutableList.of(first, second, replacement));
+    assertEquals(ImmutableList.of(replacement, second),
+        underTest.getDerivedPages());
+    assertSame(replacement, underTest.getZone("zebra"));
+    // Readers share the published list rather than copying it each time.
+    assertSame(underTest.getDerivedPages(), underTest.getDerivedPages());
+  }
+
   @Test
   public void getters() {
     MockDerivedPageManager underTest = Iterables.getOnlyElement(
@@ -139,6 +259,37 @@ public class DerivedPageManagerTest {
         underTest.getDisplayName());
   }
 
+  @Test
+  public void reuseUnchanged() {
+    FakeComponent kept = new FakeComponent(1);
+    FakeComponent moved = new FakeComponent(2);
+    NamedDerivedPageZone unchanged = new NamedDerivedPageZone("unchanged",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(kept));
+    NamedDerivedPageZone renamed = new NamedDerivedPageZone("before",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(moved));
+    underTest.setDerivedPages(ImmutableList.of(unchanged, renamed));
+
+    // As bound from a form where only the second zone was renamed.
+    List<NamedDerivedPageZone> submitted = underTest.reuseUnchanged(
+        ImmutableList.of(
+            new NamedDerivedPageZone("unchanged",
+                ImmutableList.<DerivedPageComponent<
+                    DerivedPageComponentReport<String>>>of(
+                        new FakeComponent(1))),
+            new NamedDerivedPageZone("after",
+                ImmutableList.<DerivedPageComponent<
+                    DerivedPageComponentReport<String>>>of(
+                        new FakeComponent(2), new FakeComponent(3)))));
+
+    assertSame(unchanged, submitted.get(0));
+    assertEquals("after", submitted.get(1).getName());
+    assertSame(moved, submitted.get(1).getComponents().get(0));
+    assertEquals(3, ((FakeComponent) submitted.get(1).getComponents().get(1))
+        .getValue().intValue());
+  }
+
   @Test
   public void doConfigSubmit() throws Exception {
     StaplerRequest mockRequest = mock(StaplerRequest.class);
@@ -156,4 +307,33 @@ public class DerivedPageManagerTest {
     assertEquals(1, underTest.getDerivedPages().size());
     assertThat(underTest.getZone("standard").getComponents(), empty());
   }
+
+  @Test
+  public void shutdown_stopsRefreshing() {
+    NamedDerivedPageZone zone = new NamedDerivedPageZone("some-zone",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(new FakeComponent(1)));
+    zone.setRefreshInterval(60);
+    underTest.setDerivedPages(ImmutableList.of(zone));
+    assertEquals(1, underTest.getScheduler().getScheduled().size());
+
+    underTest.shutdown();
+    assertThat(underTest.getScheduler().getScheduled(), empty());
+
+    // Nor are zones configured afterwards refreshed.
+    underTest.setDerivedPages(ImmutableList.of(zone));
+    assertThat(underTest.getScheduler().getScheduled(), empty());
+    assertSame(zone, underTest.getZone("some-zone"));
+  }
+
+  @Test
+  public void shutdown_stopsWatching() {
+    underTest.watchConfigFile();
+    assertTrue(underTest.getWatcher().isStarted());
+
+    underTest.shutdown();
+    assertFalse(underTest.getWatcher().isStarted());
+    underTest.watchConfigFile();
+    assertFalse(underTest.getWatcher().isStarted());
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.util.concurrent.ScheduledFuture;
+
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static com.google.jenkins.plugins.health.lib.DerivedPageZoneTest.CountingComponent;
+import static com.google.jenkins.plugins.health.lib.DerivedPageZoneTest.NamedDerivedPageZone;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Unit test for {@link DerivedPageScheduler}.
+ */
+public class DerivedPageSchedulerTest {
+  @Rule public JenkinsRule jenkins = new JenkinsRule();
+  private DerivedPageScheduler underTest;
+  private CountingComponent component;
+  private NamedDerivedPageZone zone;
+
+  @Before
+  public void setup() {
+    underTest = new DerivedPageScheduler();
+    component = new CountingComponent();
+    zone = new NamedDerivedPageZone("scheduled",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(component));
+  }
+
+  @After
+  public void tearDown() {
+    underTest.cancel();
+  }
+
+  @Test
+  public void schedule_refreshesInBackground() throws Exception {
+    zone.setRefreshInterval(1);
+    underTest.schedule(ImmutableList.of(zone));
+    assertEquals(1, underTest.getScheduled().size());
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (component.count.get() < 2
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertTrue(component.count.get() >= 2);
+  }
+
+  @Test
+  public void schedule_keepsUnchangedZones() {
+    underTest.schedule(ImmutableList.of(zone));
+    ScheduledFuture<?> previous =
+        Iterables.getOnlyElement(underTest.getScheduled());
+
+    underTest.schedule(ImmutableList.of(zone));
+    assertSame(previous, Iterables.getOnlyElement(underTest.getScheduled()));
+    assertFalse(previous.isCancelled());
+
+    zone.setRefreshInterval(zone.getRefreshInterval() + 1);
+    underTest.schedule(ImmutableList.of(zone));
+    assertTrue(previous.isCancelled());
+    assertEquals(1, underTest.getScheduled().size());
+  }
+
+  @Test
+  public void schedule_skipsOnDemandZones() {
+    zone.setRefreshInterval(0);
+    underTest.schedule(ImmutableList.of(zone));
+    assertThat(underTest.getScheduled(), empty());
+  }
+
+  @Test
+  public void schedule_replacesPrevious() {
+    underTest.schedule(ImmutableList.of(zone));
+    ScheduledFuture<?> previous =
+        Iterables.getOnlyElement(underTest.getScheduled());
+
+    NamedDerivedPageZone other = new NamedDerivedPageZone("other",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(component));
+    underTest.schedule(ImmutableList.of(other));
+    assertEquals(1, underTest.getScheduled().size());
+    assertTrue(previous.isCancelled());
+
+    underTest.cancel();
+    assertThat(underTest.getScheduled(), empty());
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jenkins.plugins.health.lib;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import hudson.model.Result;
+
+/**
+ * Unit test for {@link DerivedPageTransitions}.
+ */
+public class DerivedPageTransitionsTest {
+  private DerivedPageTransitions underTest;
+
+  @Before
+  public void setup() {
+    underTest = new DerivedPageTransitions();
+  }
+
+  @Test
+  public void record_firstSnapshot() throws Exception {
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+
+    DerivedPageTransitions.Events events =
+        underTest.await(0, 0, TimeUnit.SECONDS);
+    List<DerivedPageTransitions.Transition> transitions =
+        events.getTransitions();
+    assertEquals(2, transitions.size());
+    assertNull(transitions.get(0).getComponent());
+    assertNull(transitions.get(0).getPrevious());
+    assertEquals(Result.SUCCESS, transitions.get(0).getResult());
+    assertEquals("check", transitions.get(1).getComponent());
+    assertEquals(2, underTest.getSequence());
+    assertEquals(2, events.getSequence());
+    assertFalse(events.isGap());
+  }
+
+  @Test
+  public void record_onlyChanges() throws Exception {
+    DerivedPageSnapshot<DerivedPageComponentReport<String>> first =
+        snapshot(Result.SUCCESS, null);
+    underTest.record("zone", first);
+    long seen = underTest.getSequence();
+
+    DerivedPageSnapshot<DerivedPageComponentReport<String>> same =
+        snapshot(Result.SUCCESS, first);
+    underTest.record("zone", same);
+    assertThat(underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions(),
+        empty());
+
+    DerivedPageSnapshot<DerivedPageComponentReport<String>> failed =
+        snapshot(Result.FAILURE, same);
+    underTest.record("zone", failed);
+    List<DerivedPageTransitions.Transition> transitions =
+        underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions();
+    assertEquals(2, transitions.size());
+    assertEquals(seen + 1, transitions.get(0).getSequence());
+    assertEquals(Result.SUCCESS, transitions.get(0).getPrevious());
+    assertEquals(Result.FAILURE, transitions.get(0).getResult());
+  }
+
+  @Test
+  public void record_recreatedZone() throws Exception {
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+    long seen = underTest.getSequence();
+
+    // As when the configuration is saved, and the zone created anew.
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+    assertThat(underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions(),
+        empty());
+
+    underTest.record("zone", snapshot(Result.FAILURE, null));
+    List<DerivedPageTransitions.Transition> transitions =
+        underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions();
+    assertEquals(2, transitions.size());
+    assertEquals(Result.SUCCESS, transitions.get(0).getPrevious());
+  }
+
+  @Test
+  public void record_removedComponent() throws Exception {
+    DerivedPageSnapshot<DerivedPageComponentReport<String>> first =
+        snapshot(Result.SUCCESS, null);
+    underTest.record("zone", first);
+    long seen = underTest.getSequence();
+
+    underTest.record("zone",
+        new DerivedPageSnapshot<DerivedPageComponentReport<String>>(
+            ImmutableMap.of("other",
+                new DerivedPageComponentReport<String>(Result.SUCCESS, "")),
+            System.currentTimeMillis(), first));
+    List<DerivedPageTransitions.Transition> transitions =
+        underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions();
+    assertEquals(2, transitions.size());
+    assertEquals("other", transitions.get(0).getComponent());
+    assertEquals("check", transitions.get(1).getComponent());
+    assertEquals(Result.SUCCESS, transitions.get(1).getPrevious());
+    assertNull(transitions.get(1).getResult());
+  }
+
+  @Test
+  public void retain_removedZone() throws Exception {
+    underTest.record("zone", snapshot(Result.FAILURE, null));
+    long seen = underTest.getSequence();
+
+    underTest.retain(ImmutableSet.<String>of());
+    List<DerivedPageTransitions.Transition> transitions =
+        underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions();
+    assertEquals(2, transitions.size());
+    assertNull(transitions.get(0).getComponent());
+    assertEquals(Result.FAILURE, transitions.get(0).getPrevious());
+    assertNull(transitions.get(0).getResult());
+    assertEquals("check", transitions.get(1).getComponent());
+    assertNull(transitions.get(1).getResult());
+
+    // Configured again later, it reports its results as new.
+    seen = underTest.getSequence();
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+    transitions = underTest.await(seen, 0, TimeUnit.SECONDS).getTransitions();
+    assertEquals(2, transitions.size());
+    assertNull(transitions.get(0).getPrevious());
+  }
+
+  @Test
+  public void retain_keptZone() throws Exception {
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+    long seen = underTest.getSequence();
+
+    underTest.retain(ImmutableSet.of("zone"));
+    assertEquals(seen, underTest.getSequence());
+  }
+
+  @Test
+  public void await_wakesUp() throws Exception {
+    final long seen = underTest.getSequence();
+    Thread recorder = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        underTest.record("zone", snapshot(Result.FAILURE, null));
+      }
+    };
+    recorder.start();
+    assertEquals(2, underTest.await(seen, 10, TimeUnit.SECONDS)
+        .getTransitions().size());
+    recorder.join();
+  }
+
+  @Test
+  public void await_timesOut() throws Exception {
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+
+    DerivedPageTransitions.Events events =
+        underTest.await(2, 10, TimeUnit.MILLISECONDS);
+    assertThat(events.getTransitions(), empty());
+    assertEquals(2, events.getSequence());
+    assertFalse(events.isGap());
+  }
+
+  @Test
+  public void await_afterLatest() throws Exception {
+    underTest.record("zone", snapshot(Result.SUCCESS, null));
+
+    // Such as a number handed out before Jenkins restarted.
+    long start = System.nanoTime();
+    DerivedPageTransitions.Events events =
+        underTest.await(42, 10, TimeUnit.SECONDS);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertThat(events.getTransitions(), empty());
+    assertEquals(2, events.getSequence());
+    assertTrue(events.isGap());
+  }
+
+  @Test
+  public void await_keepsOnlyCapacity() throws Exception {
+    DerivedPageSnapshot<DerivedPageComponentReport<String>> previous = null;
+    for (int i = 0; i < DerivedPageTransitions.CAPACITY; i++) {
+      DerivedPageSnapshot<DerivedPageComponentReport<String>> current =
+          snapshot(i % 2 == 0 ? Result.SUCCESS : Result.FAILURE, previous);
+      underTest.record("zone", current);
+      previous = current;
+    }
+    DerivedPageTransitions.Events events =
+        underTest.await(0, 0, TimeUnit.SECONDS);
+    assertEquals(DerivedPageTransitions.CAPACITY,
+        events.getTransitions().size());
+    assertTrue(events.isGap());
+
+    long oldest = events.getTransitions().get(0).getSequence();
+    assertFalse(underTest.await(oldest - 1, 0, TimeUnit.SECONDS).isGap());
+  }
+
+  private static DerivedPageSnapshot<DerivedPageComponentReport<String>>
+      snapshot(Result result,
+          DerivedPageSnapshot<DerivedPageComponentReport<String>> previous) {
+    return new DerivedPageSnapshot<DerivedPageComponentReport<String>>(
+        ImmutableMap.of("check",
+            new DerivedPageComponentReport<String>(result, "log")),
+        System.currentTimeMillis(), previous);
+  }
+}
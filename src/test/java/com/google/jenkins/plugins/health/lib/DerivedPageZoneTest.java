@@ -16,10 +16,24 @@
 package com.google.jenkins.plugins.health.lib;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -27,7 +41,10 @@ import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
+import hudson.model.Result;
 
 /**
  * Unit test for {@link DerivedPageZone}.
@@ -55,9 +72,69 @@ public class DerivedPageZoneTest {
     @Override
     protected DerivedPageComponentReport<String> derivePageComponent(
         DerivedPageComponent<DerivedPageComponentReport<String>> component) {
-      return null;
+      return component.performDerivation();
+    }
+  }
+
+  /** A {@link DerivedPageComponent} that counts its derivations. */
+  static class CountingComponent implements DerivedPageComponent<
+      DerivedPageComponentReport<String>> {
+    final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public DerivedPageComponentReport<String> performDerivation() {
+      return new DerivedPageComponentReport<String>(
+          Result.SUCCESS, String.valueOf(count.incrementAndGet()));
+    }
+  }
+
+  /**
+   * A {@link DerivedPageComponent} that only succeeds if all of its siblings
+   * are being derived at the same time.
+   */
+  static class BarrierComponent implements DerivedPageComponent<
+      DerivedPageComponentReport<String>> {
+    private final String name;
+    private final CyclicBarrier barrier;
+
+    BarrierComponent(String name, CyclicBarrier barrier) {
+      this.name = name;
+      this.barrier = barrier;
+    }
+
+    @Override
+    public DerivedPageComponentReport<String> performDerivation() {
+      try {
+        barrier.await(10, TimeUnit.SECONDS);
+        return new DerivedPageComponentReport<String>(Result.SUCCESS, name);
+      } catch (Exception e) {
+        return new DerivedPageComponentReport<String>(Result.FAILURE, name);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** A {@link CountingComponent} that blocks until released. */
+  static class BlockingComponent extends CountingComponent {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public DerivedPageComponentReport<String> performDerivation() {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.performDerivation();
     }
   }
+
   @Rule public JenkinsRule jenkins = new JenkinsRule();
   private DerivedPageZone<
       DerivedPageComponent<DerivedPageComponentReport<String>>,
@@ -75,4 +152,117 @@ public class DerivedPageZoneTest {
     assertThat(underTest.getComponents(), empty());
     assertEquals("under-test", underTest.getName());
   }
+
+  @Test
+  public void refreshInterval() {
+    assertEquals(DerivedPageZone.DEFAULT_REFRESH_INTERVAL,
+        underTest.getRefreshInterval());
+    underTest.setRefreshInterval(5);
+    assertEquals(5, underTest.getRefreshInterval());
+    underTest.setRefreshInterval(-1);
+    assertEquals(0, underTest.getRefreshInterval());
+  }
+
+  @Test
+  public void getReports_servedFromSnapshot() {
+    CountingComponent component = new CountingComponent();
+    underTest = new NamedDerivedPageZone("counting",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(component));
+
+    DerivedPageSnapshot<DerivedPageComponentReport<String>> first =
+        underTest.getSnapshot();
+    assertSame(first, underTest.getSnapshot());
+    underTest.getReports();
+    assertEquals(1, component.count.get());
+
+    assertNotSame(first, underTest.refresh());
+    assertEquals("2", Iterables.getOnlyElement(
+        underTest.getReports().values()).getValue());
+  }
+
+  @Test
+  public void getReports_onDemand() {
+    CountingComponent component = new CountingComponent();
+    underTest = new NamedDerivedPageZone("counting",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(component));
+    underTest.setRefreshInterval(0);
+
+    underTest.getReports();
+    underTest.getReports();
+    assertEquals(2, component.count.get());
+  }
+
+  @Test
+  public void refresh_parallel() {
+    CyclicBarrier barrier = new CyclicBarrier(3);
+    underTest = new NamedDerivedPageZone("parallel",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(
+            new BarrierComponent("c", barrier),
+            new BarrierComponent("a", barrier),
+            new BarrierComponent("b", barrier)));
+    assertFalse(underTest.isParallel());
+    underTest.setParallel(true);
+
+    Map<String, DerivedPageComponentReport<String>> reports =
+        underTest.refresh().getReports();
+    assertThat(reports.keySet(), contains("c", "a", "b"));
+    for (DerivedPageComponentReport<String> report : reports.values()) {
+      assertEquals(Result.SUCCESS, report.getResult());
+    }
+  }
+
+  @Test
+  public void refresh_coalescesConcurrentCallers() throws Exception {
+    BlockingComponent component = new BlockingComponent();
+    underTest = new NamedDerivedPageZone("blocking",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(component));
+    Callable<Object> refresh = new Callable<Object>() {
+      @Override
+      public Object call() {
+        return underTest.refresh();
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    try {
+      Future<Object> first = executor.submit(refresh);
+      assertTrue(component.started.await(10, TimeUnit.SECONDS));
+      List<Future<Object>> others = Lists.newArrayList();
+      for (int i = 0; i < 4; i++) {
+        others.add(executor.submit(refresh));
+      }
+      // Give the late callers a chance to pile up behind the first one.
+      Thread.sleep(500);
+      component.release.countDown();
+
+      for (Future<Object> other : others) {
+        assertSame(first.get(), other.get());
+      }
+      assertEquals(1, component.count.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void refresh_generation() {
+    CountingComponent counting = new CountingComponent();
+    underTest = new NamedDerivedPageZone("changing",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(counting));
+    long first = underTest.refresh().getGeneration();
+    long second = underTest.refresh().getGeneration();
+    assertTrue(second > first);
+
+    underTest = new NamedDerivedPageZone("steady",
+        ImmutableList.<DerivedPageComponent<
+            DerivedPageComponentReport<String>>>of(
+            new BarrierComponent("alone", new CyclicBarrier(1))));
+    long steady = underTest.refresh().getGeneration();
+    assertTrue(steady > second);
+    assertEquals(steady, underTest.refresh().getGeneration());
+  }
 }